@@ -1,46 +1,95 @@
 package org.paperless.de;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.paperless.de.output.CsvSink;
+import org.paperless.de.output.SinkFactory;
+import org.paperless.de.output.Sinks;
+import org.paperless.de.output.XmlSink;
+import org.paperless.de.parser.LayoutCache;
+import org.paperless.de.parser.PdfString;
+import org.paperless.de.parser.TemplateIndex;
 import org.paperless.de.parser.TextStripper;
 import org.paperless.de.util.Attribute;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import org.paperless.de.util.AttributePlan;
+import org.paperless.de.util.DocumentLoader;
+import org.paperless.de.util.Hashes;
+import org.paperless.de.util.Manifest;
+import org.paperless.de.util.Metrics;
+import org.paperless.de.util.TemplateLoader;
 
 /**
- * Klasse zur Anwendung eines Templates auf eine Menge PDF-Dokumente
+ * Klasse zur Anwendung eines Templates auf eine Menge PDF-Dokumente. Werden
+ * mehrere Templates angegeben, wird jedes Dokument einmal geparst und mit dem
+ * am besten passenden Template ausgewertet, s. {@link #extractValues}.
  * 
  * @author nba
  */
 public class ApplyTemplate {
 	
+	/**
+	 * Anzahl der Dokumente pro Thread, die im Parallelbetrieb höchstens im
+	 * Voraus eingeplant werden. Begrenzt die Anzahl gleichzeitig im Speicher
+	 * gehaltener Ergebnisse.
+	 */
+	private static final int MAX_PENDING_PER_THREAD = 4;
+	
+	/**
+	 * Intervall in Sekunden, in dem die Metriken im Dienst- und
+	 * Überwachungsmodus geschrieben werden
+	 */
+	private static final long METRICS_INTERVAL = 10;
+	
+	/**
+	 * Mindestanzahl zu lesender Seiten je Thread, ab der ein Dokument auf
+	 * mehrere {@link #pageThreads} aufgeteilt wird. Jeder weitere Thread lädt
+	 * das Dokument erneut, das lohnt sich nur bei großen Dokumenten.
+	 */
+	private static final int MIN_PAGES_PER_WORKER = 50;
+	
+	/**
+	 * Spaltenname des gewählten Templates bei mehreren Templates. Unter
+	 * diesem Schlüssel steht der Templatename auch in den Attributwerten aus
+	 * {@link #extractValues}.
+	 */
+	public static final String TEMPLATE_COLUMN = "Vorlage";
+	
 	/**
 	 * PDF-Eingabeordner
 	 */
 	private File pdf;
 	
 	/**
-	 * XML-Attributtemplate
+	 * XML-Attributtemplates
 	 */
-	private File xml;
+	private List<File> xmls;
 	
 	/**
-	 * CSV-Ausgabedatei
+	 * Ausgabedatei
 	 */
 	private File output;
 	
@@ -50,27 +99,188 @@ public class ApplyTemplate {
 	private float xTol, yTol;
 	
 	/**
-	 * Liste der geparsten Attribute aus {@link #xml dem Template}.
+	 * Liste der Attribute in Spaltenreihenfolge. Bei einem Template sind das
+	 * dessen Attribute, bei mehreren die Vereinigung aller Attributnamen in
+	 * Reihenfolge des ersten Auftretens.
 	 */
 	private List<Attribute> attrList;
+	
+	/**
+	 * Attribute je Template in Reihenfolge von {@link #xmls}
+	 */
+	private List<List<Attribute>> templates;
+	
+	/**
+	 * Name je Template (Dateiname ohne Endung) in Reihenfolge von {@link #xmls}
+	 */
+	private List<String> templateNames;
+	
+	/**
+	 * Attribute aller Templates, bestimmen im Bereichsmodus die extrahierten
+	 * Glyphen. Bei mehreren Templates gehören auch die Ankertexte dazu.
+	 */
+	private List<Attribute> allAttributes;
+	
+	/**
+	 * Index über die Ankertexte bei mehreren Templates oder <code>null</code>,
+	 * wenn kein Template Anker hat. Nur die Kandidaten daraus werden
+	 * abgeglichen.
+	 */
+	private TemplateIndex index;
+	
+	/**
+	 * gibt an, ob bei mehreren Templates eine einzelne Ausgabedatei mit
+	 * Templatespalte statt einer Datei je Template geschrieben wird
+	 */
+	private boolean templateColumn;
+	
+	/**
+	 * Ausgabeformat
+	 */
+	private SinkFactory format;
+	
+	/**
+	 * gibt an, ob die Attributwerte zusätzlich als Tabelle auf der Konsole
+	 * ausgegeben werden. Bei großen Mengen bremst die Konsole die
+	 * Verarbeitung deutlich.
+	 */
+	private boolean console;
+	
+	/**
+	 * Seiten, auf die sich die Attribute beziehen. Nur diese werden geparst,
+	 * <code>null</code> bedeutet alle Seiten.
+	 */
+	private Set<Integer> attrPages;
+	
+	/**
+	 * Anzahl der Threads, mit denen die PDF-Dokumente parallel verarbeitet
+	 * werden. Bei 1 wird sequentiell im aufrufenden Thread gearbeitet.
+	 */
+	private int threads;
+	
+	/**
+	 * Anzahl der Threads, auf die die Seiten eines einzelnen großen Dokuments
+	 * verteilt werden, s. {@link #parsePages}
+	 */
+	private int pageThreads;
+	
+	/**
+	 * Threads für die Seitenabschnitte großer Dokumente, wird bei Bedarf
+	 * erstellt, s. {@link #getPageExecutor()}
+	 */
+	private ExecutorService pageExecutor;
+	
+	/**
+	 * gibt an, ob {@link #shutdown()} gerufen wurde
+	 */
+	private boolean closed;
+	
+	/**
+	 * Anzahl Threads je Stufe (Laden, Parsen, Abgleich) für die
+	 * Stapelverarbeitung über eine {@link Pipeline} oder <code>null</code>
+	 */
+	private int[] pipeline;
+	
+	/**
+	 * gibt an, ob nur Glyphen innerhalb der Attributrahmen extrahiert werden,
+	 * s. {@link TextStripper#setRegions}
+	 */
+	private boolean regions;
+	
+	/**
+	 * gibt an, ob die Glyphen ohne Layoutanalyse gruppiert werden, s.
+	 * {@link TextStripper#setRawGlyphs}
+	 */
+	private boolean rawGlyphs;
+	
+	/**
+	 * Loader für die PDF-Dokumente mit der gewählten Speichernutzung
+	 */
+	private DocumentLoader loader;
+	
+	/**
+	 * Verzeichnis des Layout-Caches oder <code>null</code>
+	 */
+	private File cacheDir;
+	
+	/**
+	 * Zwischenspeicher für bereits geparste Dokumente oder <code>null</code>
+	 */
+	private LayoutCache cache;
+	
+	/**
+	 * Port des {@link ExtractionServer Extraktionsdienstes} oder -1 für die
+	 * Stapelverarbeitung
+	 */
+	private int port;
+	
+	/**
+	 * gibt an, ob das {@link #pdf Eingabeverzeichnis} nach der Verarbeitung
+	 * weiter überwacht wird, s. {@link InboxWatcher}
+	 */
+	private boolean watch;
+	
+	/**
+	 * gibt an, ob nur neue oder geänderte Dokumente verarbeitet werden, s.
+	 * {@link Manifest}
+	 */
+	private boolean incremental;
+	
+	/**
+	 * Laufzeitmetriken der Verarbeitung
+	 */
+	private Metrics metrics = new Metrics();
+	
+	/**
+	 * Pfadpräfix für die Ausgabe der {@link #metrics Metriken} oder
+	 * <code>null</code>
+	 */
+	private String metricsPrefix;
 
 	/**
 	 * Hauptmethode
 	 * @param args
 	 * <table summary="Kommandozeilenparameter">
 	 * <tr><td>--pdfPath</td><td>Pfad des PDF-Eingabeordners</td></tr>
-	 * <tr><td>--attributes</td><td>Pfad der XML-Attributdatei</td></tr>
-	 * <tr><td>--output</td><td>Pfad der CSV-Ausgabedatei</td></tr>
+	 * <tr><td>--attributes</td><td>Pfad der XML-Attributdatei oder eines Verzeichnisses mit Templates, mehrfach möglich</td></tr>
+	 * <tr><td>--output</td><td>Pfad der Ausgabedatei</td></tr>
+	 * <tr><td>--format</td><td>Ausgabeformat csv, jsonl, xml oder ein weiteres Format, s. {@link Sinks}</td></tr>
+	 * <tr><td>--console</td><td>Attributwerte zusätzlich als Tabelle auf der Konsole ausgeben</td></tr>
 	 * <tr><td>--tolerance</td><td>Toleranzen in X- und Y-Richtung bei der Anwendung der Attribute</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in X-Richtung bei der Anwendung der Attribute</td></tr>
 	 * <tr><td>--yTolerance</td><td>Toleranz in Y-Richtung bei der Anwendung der Attribute</td></tr>
+	 * <tr><td>--threads</td><td>Anzahl paralleler Threads für die Verarbeitung der PDF-Dokumente</td></tr>
+	 * <tr><td>--pipeline</td><td>Threads für Laden, Parsen und Abgleich als L:S:M, die Stufen laufen überlappend, s. {@link Pipeline}</td></tr>
+	 * <tr><td>--pageThreads</td><td>Anzahl paralleler Threads für die Seiten eines einzelnen großen PDF-Dokuments</td></tr>
+	 * <tr><td>--regions</td><td>nur Text innerhalb der Attributrahmen extrahieren</td></tr>
+	 * <tr><td>--raw</td><td>Glyphen ohne Layoutanalyse von PDFBox zu Texten gruppieren, s. {@link TextStripper#setRawGlyphs}</td></tr>
+	 * <tr><td>--memory</td><td>Speichernutzung je PDF-Dokument: heap, temp oder mixed:Größe</td></tr>
+	 * <tr><td>--tempDir</td><td>Verzeichnis für temporäre Dateien</td></tr>
+	 * <tr><td>--inputMode</td><td>Lesezugriff auf die PDFs: file oder mmap</td></tr>
+	 * <tr><td>--cache</td><td>Verzeichnis für zwischengespeicherte Layouts bereits geparster Dokumente</td></tr>
+	 * <tr><td>--server</td><td>startet einen lokalen HTTP-Extraktionsdienst auf dem angegebenen Port, s. {@link ExtractionServer}</td></tr>
+	 * <tr><td>--watch</td><td>überwacht das PDF-Eingabeverzeichnis und hängt neue Dokumente an die Ausgabe an, s. {@link InboxWatcher}</td></tr>
+	 * <tr><td>--incremental</td><td>verarbeitet nur neue oder geänderte Dokumente und übernimmt die übrigen Zeilen aus der bisherigen Ausgabe</td></tr>
+	 * <tr><td>--metrics</td><td>Pfadpräfix für Laufzeitmetriken als JSON und im Prometheus-Format, s. {@link Metrics}</td></tr>
+	 * <tr><td>--templateColumn</td><td>bei mehreren Templates eine einzelne Ausgabedatei mit Spalte für das gewählte Template schreiben</td></tr>
 	 * </table>
 	 */
 	public static void main(String[] args) {
 		try {
 			ApplyTemplate inst = new ApplyTemplate(args);
 			inst.readAttributes();
-			inst.applyAttributes();
+			if (inst.getPort() >= 0) {
+				final ExtractionServer server = new ExtractionServer(args, inst, inst.getPort());
+				server.start();
+				//der Dienst läuft bis zum Beenden der JVM
+				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+					public void run() {
+						server.stop();
+					}
+				}, "shutdown"));
+			} else {
+				inst.applyAttributes();
+			}
 			
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -82,11 +292,27 @@ public class ApplyTemplate {
 	 * @param args
 	 * <table summary="Kommandozeilenparameter">
 	 * 	<tr><td>--pdfPath</td><td>Pfad des PDF-Eingabeordners</td></tr>
-	 * 	<tr><td>--attributes</td><td>Pfad der XML-Attributdatei</td></tr>
-	 * 	<tr><td>--output</td><td>Pfad der CSV-Ausgabedatei</td></tr>
+	 * 	<tr><td>--attributes</td><td>Pfad der XML-Attributdatei oder eines Verzeichnisses mit Templates, mehrfach möglich</td></tr>
+	 * 	<tr><td>--output</td><td>Pfad der Ausgabedatei</td></tr>
+	 * 	<tr><td>--format</td><td>Ausgabeformat csv, jsonl, xml oder ein weiteres Format, s. {@link Sinks}</td></tr>
+	 * 	<tr><td>--console</td><td>Attributwerte zusätzlich als Tabelle auf der Konsole ausgeben</td></tr>
 	 * 	<tr><td>--tolerance</td><td>Toleranzen in X- und Y-Richtung bei der Anwendung der Attribute</td></tr>
 	 * 	<tr><td>--xTolerance</td><td>Toleranz in X-Richtung bei der Anwendung der Attribute</td></tr>
 	 * 	<tr><td>--yTolerance</td><td>Toleranz in Y-Richtung bei der Anwendung der Attribute</td></tr>
+	 * 	<tr><td>--threads</td><td>Anzahl paralleler Threads für die Verarbeitung der PDF-Dokumente</td></tr>
+	 * 	<tr><td>--pipeline</td><td>Threads für Laden, Parsen und Abgleich als L:S:M, die Stufen laufen überlappend, s. {@link Pipeline}</td></tr>
+	 * 	<tr><td>--pageThreads</td><td>Anzahl paralleler Threads für die Seiten eines einzelnen großen PDF-Dokuments</td></tr>
+	 * 	<tr><td>--regions</td><td>nur Text innerhalb der Attributrahmen extrahieren</td></tr>
+	 * 	<tr><td>--raw</td><td>Glyphen ohne Layoutanalyse von PDFBox zu Texten gruppieren, s. {@link TextStripper#setRawGlyphs}</td></tr>
+	 * 	<tr><td>--memory</td><td>Speichernutzung je PDF-Dokument: heap, temp oder mixed:Größe</td></tr>
+	 * 	<tr><td>--tempDir</td><td>Verzeichnis für temporäre Dateien</td></tr>
+	 * 	<tr><td>--inputMode</td><td>Lesezugriff auf die PDFs: file oder mmap</td></tr>
+	 * 	<tr><td>--cache</td><td>Verzeichnis für zwischengespeicherte Layouts bereits geparster Dokumente</td></tr>
+	 * 	<tr><td>--server</td><td>startet einen lokalen HTTP-Extraktionsdienst auf dem angegebenen Port, s. {@link ExtractionServer}</td></tr>
+	 * 	<tr><td>--watch</td><td>überwacht das PDF-Eingabeverzeichnis und hängt neue Dokumente an die Ausgabe an, s. {@link InboxWatcher}</td></tr>
+	 * 	<tr><td>--incremental</td><td>verarbeitet nur neue oder geänderte Dokumente und übernimmt die übrigen Zeilen aus der bisherigen Ausgabe</td></tr>
+	 * 	<tr><td>--metrics</td><td>Pfadpräfix für Laufzeitmetriken als JSON und im Prometheus-Format, s. {@link Metrics}</td></tr>
+	 * 	<tr><td>--templateColumn</td><td>bei mehreren Templates eine einzelne Ausgabedatei mit Spalte für das gewählte Template schreiben</td></tr>
 	 * </table>
 	 */
 	public ApplyTemplate(String[] args) {
@@ -94,150 +320,749 @@ public class ApplyTemplate {
 	}
 	
 	/**
-	 * liest die Attribute aus der {@link #xml Templatedatei}
-	 * @throws ParserConfigurationException
-	 * 			Fehler beim Parsen der XML
-	 * @throws SAXException
+	 * liest die Attribute aus den {@link #xmls Templatedateien}, s.
+	 * {@link TemplateLoader}. Bei mehreren Templates werden die Seiten aller
+	 * Templates geparst, bei Templates mit Ankertexten zusätzlich deren
+	 * Seiten, s. {@link TemplateIndex}.
+	 * @throws XMLStreamException
 	 * 			Fehler beim Parsen der XML
 	 * @throws IOException
 	 * 			Fehler beim Lesen der XML-Datei
 	 */
-	public void readAttributes() throws ParserConfigurationException, SAXException, IOException {		
-		attrList = new ArrayList<Attribute>();
-		//Parsen der XML
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		Document doc = builder.parse(xml);
-		//doc.getDocumentElement().normalize();
+	public void readAttributes() throws XMLStreamException, IOException {
+		templates = new ArrayList<List<Attribute>>(xmls.size());
+		templateNames = new ArrayList<String>(xmls.size());
+		allAttributes = new ArrayList<Attribute>();
+		Map<String, Attribute> columns = new LinkedHashMap<String, Attribute>();
+		Set<Integer> pages = new TreeSet<Integer>();
+		boolean allPages = false;
+		List<List<Attribute>> anchors = new ArrayList<List<Attribute>>(xmls.size());
+		boolean hasAnchors = false;
+		for (File xml : xmls) {
+			AttributePlan plan = TemplateLoader.load(xml);
+			templates.add(plan.getAttributes());
+			anchors.add(plan.getAnchors());
+			hasAnchors |= !plan.getAnchors().isEmpty();
+			templateNames.add(getTemplateName(xml));
+			allAttributes.addAll(plan.getAttributes());
+			for (Attribute attr : plan.getAttributes()) {
+				if (!columns.containsKey(attr.name)) {
+					columns.put(attr.name, attr);
+				}
+			}
+			if (plan.getPages() == null) {
+				allPages = true;
+			} else {
+				pages.addAll(plan.getPages());
+			}
+		}
+		if (isMultiTemplate() && columns.containsKey(TEMPLATE_COLUMN)) {
+			throw new IOException("Bei mehreren Templates darf kein Attribut " + TEMPLATE_COLUMN + " heißen.");
+		}
+		attrList = templates.size() == 1 ? templates.get(0)
+				: Collections.unmodifiableList(new ArrayList<Attribute>(columns.values()));
+		index = null;
+		if (isMultiTemplate() && hasAnchors) {
+			index = new TemplateIndex(anchors);
+			pages.addAll(index.getPages());
+			for (List<Attribute> list : anchors) {
+				allAttributes.addAll(list);
+			}
+		}
+		attrPages = allPages ? null : pages;
 		
-		NodeList attrNodeList = doc.getElementsByTagName("attribute");
-		for (int i = 0; i < attrNodeList.getLength(); i++) {
-			//Lesen aller Attribute
-			attrList.add(readAttribute(attrNodeList.item(i)));
+		if (cacheDir != null) {
+			cache = new LayoutCache(cacheDir, getExtractionSettings());
+		}
+	}
+	
+	/**
+	 * Beschreibt alle Einstellungen, die die extrahierten Texte beeinflussen.
+	 * Die Toleranzen und Attributrahmen gehen nur im Bereichsmodus ein, da
+	 * sie sonst nur den Abgleich betreffen.
+	 * @return Beschreibung für den Schlüssel im {@link LayoutCache}
+	 */
+	private String getExtractionSettings() {
+		StringBuilder ret = new StringBuilder();
+		ret.append("splitGap=").append(TextStripper.SPLIT_GAP);
+		ret.append(";pages=").append(attrPages == null ? "all" : attrPages.toString());
+		ret.append(";raw=").append(rawGlyphs);
+		if (regions) {
+			ret.append(";tolerance=").append(xTol).append(',').append(yTol);
+			ret.append(";regions=");
+			for (Attribute attr : allAttributes) {
+				ret.append('[').append(attr.page).append(',').append(attr.xStart).append(',').append(attr.yStart)
+						.append(',').append(attr.xEnd).append(',').append(attr.yEnd).append(']');
+			}
 		}
+		return ret.toString();
 	}
 	
 	/**
-	 * Vergleicht Attribute der Dateien mit der Attributliste
+	 * Vergleicht Attribute der Dateien mit der Attributliste. Ist mehr als ein
+	 * {@link #threads Thread} angegeben, werden die Dokumente parallel
+	 * verarbeitet. Die Ergebnisse werden sofort nach Fertigstellung eines
+	 * Dokuments ausgegeben, die Ausgabe ist in jedem Fall nach Dateinamen
+	 * sortiert. Im {@link #watch Überwachungsmodus} kehrt die Methode nach den
+	 * vorhandenen Dokumenten nicht zurück, sondern verarbeitet jedes neu
+	 * eintreffende Dokument.<br>
+	 * Im {@link #incremental inkrementellen Modus} werden die Zeilen
+	 * unveränderter Dokumente aus der bisherigen Ausgabe übernommen, sofern
+	 * das {@link Manifest} zur selben {@link #getTemplateVersion()
+	 * Templateversion} gehört. Die Zeilen werden dabei aus der bisherigen
+	 * Ausgabe gestreamt, s. {@link PreviousOutput}. Nach der Verarbeitung
+	 * wird das Manifest neben der Ausgabedatei aktualisiert.<br>
+	 * Am Ende wird der Extraktor mit {@link #shutdown()} beendet.
 	 * @throws IOException
-	 * 			Fehler beim Lesen einer PDF
+	 * 			Fehler beim Lesen einer PDF oder beim Schreiben der Ausgabe
 	 */
 	public void applyAttributes() throws IOException {
-		//Speichern der Attributwerte
-		//Schlüssel der äußeren Map: Dateiname
-		//Schlüssel der inneren Map: Attributname
-		//Wert der inneren Map: Attributwert
-		Map<String, Map<String, String>> fileValues = new HashMap<String, Map<String, String>>();
+		File manifestFile = new File(output.getPath() + Manifest.SUFFIX);
+		String templateVersion = null;
+		Manifest previous = null;
+		PreviousOutput previousRows = PreviousOutput.none();
+		if (incremental) {
+			//die bisherige Ausgabe muss beiseite gelegt werden, bevor sie überschrieben wird
+			templateVersion = getTemplateVersion();
+			previous = Manifest.read(manifestFile);
+			if (previous != null && previous.getTemplateVersion().equals(templateVersion)
+					&& format.getFormat().equals(Sinks.DEFAULT_FORMAT)) {
+				previousRows = PreviousOutput.open(output, ResultWriter.getHeader(attrList, isMultiTemplate()));
+			}
+		}
 		
+		try (PreviousOutput kept = previousRows; ResultWriter csv = createResultWriter()) {
+			outputHeader();
+			
+			//die Überwachung wird vor dem Lesen des Verzeichnisses registriert,
+			//damit keine Datei dazwischen verloren geht
+			InboxWatcher watcher = watch ? new InboxWatcher(this, pdf, csv) : null;
+			File[] files = listFiles();
+			if (watcher != null) {
+				//noch geschriebene Dateien übernimmt die Überwachung, sobald sie fertig sind
+				files = watcher.admit(files);
+			}
+			
+			if (incremental) {
+				Manifest manifest = new Manifest(templateVersion);
+				for (File file : files) {
+					Manifest.Entry old = previous != null ? previous.get(file.getName()) : null;
+					Manifest.Entry entry = Manifest.describe(file, old);
+					manifest.put(entry);
+					if (old != null && old.hash.equals(entry.hash)) {
+						kept.keep(file.getName());
+					}
+				}
+				processFiles(csv, files, kept);
+				csv.flush();
+				manifest.write(manifestFile);
+				System.out.println(kept.getKeptCount() + " von " + files.length + " Dokumenten unverändert übernommen");
+			} else {
+				processFiles(csv, files, null);
+			}
+			
+			if (watcher != null) {
+				csv.flush();
+				startPeriodicMetrics();
+				watcher.run();
+			}
+		} finally {
+			shutdown();
+		}
+		writeMetrics();
+	}
+	
+	/**
+	 * Öffnet die Ausgabe und schreibt die Kopfzeilen
+	 * @return eine Ausgabedatei oder bei mehreren Templates ohne
+	 * 			{@link #templateColumn} eine Datei je Template
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	private ResultWriter createResultWriter() throws IOException {
+		if (isMultiTemplate() && !templateColumn) {
+			return new ResultWriter(output, format, templateNames, templates);
+		}
+		return new ResultWriter(output, format, attrList, isMultiTemplate());
+	}
+	
+	/**
+	 * @return <code>true</code>, wenn mehr als ein Template angegeben wurde
+	 */
+	private boolean isMultiTemplate() {
+		return xmls.size() > 1;
+	}
+	
+	/**
+	 * Ermittelt den Namen eines Templates
+	 * @param xml
+	 * 			Templatedatei
+	 * @return Dateiname ohne Endung
+	 */
+	private static String getTemplateName(File xml) {
+		String name = xml.getName();
+		return name.toLowerCase().endsWith(".xml") ? name.substring(0, name.length() - 4) : name;
+	}
+	
+	/**
+	 * Schreibt die {@link #metrics Metriken}, sofern mit --metrics ein
+	 * Pfadpräfix angegeben wurde
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public void writeMetrics() throws IOException {
+		if (metricsPrefix != null) {
+			metrics.write(metricsPrefix);
+		}
+	}
+	
+	/**
+	 * Schreibt die {@link #metrics Metriken} regelmäßig im Hintergrund,
+	 * sofern mit --metrics ein Pfadpräfix angegeben wurde
+	 */
+	public void startPeriodicMetrics() {
+		if (metricsPrefix != null) {
+			metrics.startPeriodicWrite(metricsPrefix, METRICS_INTERVAL);
+		}
+	}
+	
+	/**
+	 * @return Laufzeitmetriken der Verarbeitung
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Setzt die Laufzeitmetriken, z.B. um sie beim Neuladen des Templates
+	 * weiterzuführen
+	 * @param metrics
+	 * 			Laufzeitmetriken
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Beschreibt Template und Einstellungen für das {@link Manifest}. Ändert
+	 * sich einer der Werte, werden im inkrementellen Modus alle Dokumente neu
+	 * verarbeitet.
+	 * @return Prüfsumme über Templatedatei, Toleranzen und
+	 * 			Extraktionseinstellungen
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Templatedatei
+	 */
+	private String getTemplateVersion() throws IOException {
+		StringBuilder ret = new StringBuilder();
+		for (File xml : xmls) {
+			ret.append(getTemplateName(xml)).append('=').append(Hashes.sha256(xml)).append('\n');
+		}
+		ret.append(getExtractionSettings()).append(";regionMode=").append(regions);
+		ret.append(";tolerance=").append(xTol).append(',').append(yTol);
+		return Hashes.sha256(ret.toString());
+	}
+	
+	/**
+	 * Listet die PDF-Dateien im {@link #pdf Eingabeverzeichnis}
+	 * @return PDF-Dateien sortiert nach Dateinamen
+	 */
+	private File[] listFiles() {
 		//Filter, um nur PDF-Dateien auszuwählen
 		FilenameFilter filter = new FilenameFilter() {
 			public boolean accept(File dir, String name) {
 				return name.endsWith(".pdf") || name.endsWith(".PDF");
 			}
 		};
-		for (File file : pdf.listFiles(filter)) {
-			PDDocument doc = PDDocument.load(file);
-			TextStripper stripper = new TextStripper();
-			stripper.parse(doc);
-            doc.close();
-            
-            Map<String, String> values = stripper.getAttrValues(attrList, xTol, yTol);
-            fileValues.put(file.getName(), values);
+		File[] files = pdf.listFiles(filter);
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return f1.getName().compareTo(f2.getName());
+			}
+		});
+		return files;
+	}
+	
+	/**
+	 * Verarbeitet die angegebenen Dateien und gibt die Ergebnisse in deren
+	 * Reihenfolge aus. Ist {@link #pipeline} gesetzt, laufen Laden, Parsen
+	 * und Abgleich in getrennten Stufen einer {@link Pipeline}.
+	 * @param csv
+	 * 			geöffnete Ausgabe
+	 * @param files
+	 * 			PDF-Dateien
+	 * @param kept
+	 * 			bisherige Ausgabe mit den Zeilen unveränderter Dateien, die
+	 * 			ohne Verarbeitung in die Ausgabe übernommen werden, oder
+	 * 			<code>null</code>
+	 * @throws IOException
+	 * 			Fehler beim Lesen einer PDF oder beim Schreiben der Ausgabe
+	 */
+	private void processFiles(ResultWriter csv, File[] files, PreviousOutput kept) throws IOException {
+		if (kept == null) {
+			kept = PreviousOutput.none();
+		}
+		if (pipeline != null) {
+			new Pipeline(this, pipeline[0], pipeline[1], pipeline[2]).run(csv, files, kept);
+		} else if (threads > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				//Futures in Reihenfolge der Dateinamen, damit die Ausgabe deterministisch bleibt.
+				//Es werden nur begrenzt viele Dokumente im Voraus eingeplant, damit der
+				//Speicherbedarf nicht mit der Anzahl der Dokumente wächst.
+				Deque<Future<Map<String, String>>> pending = new ArrayDeque<Future<Map<String, String>>>();
+				int next = 0;
+				for (int i = 0; i < files.length; i++) {
+					while (next < files.length && pending.size() < threads * MAX_PENDING_PER_THREAD) {
+						final File file = files[next++];
+						if (kept.isKept(file.getName())) {
+							continue;
+						}
+						pending.add(executor.submit(new Callable<Map<String, String>>() {
+							public Map<String, String> call() throws IOException {
+								return extractValues(file);
+							}
+						}));
+					}
+					if (kept.isKept(files[i].getName())) {
+						csv.writeRow(kept.take(files[i].getName()));
+					} else {
+						outputValues(csv, files[i].getName(), waitFor(pending.poll()));
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		} else {
+			for (File file : files) {
+				if (kept.isKept(file.getName())) {
+					csv.writeRow(kept.take(file.getName()));
+				} else {
+					outputValues(csv, file.getName(), extractValues(file));
+				}
+			}
 		}
-//		checkForValuePatterns(fileValues);
-		//Ausgabe der Werte		
-		outputValues(fileValues);
 	}
 	
 	/**
-	 * Methode zur Ausgabe der Attributwerte
-	 * @param values
-	 * 			Attributwerte<br>
-	 * 			SCHLÜSSEL (äußere Map): Dateiname
-	 * 			SCHLÜSSEL (innere Map): Attributname
-	 * 			WERT (innere Map): Attributwert
+	 * Parst ein einzelnes PDF-Dokument und liest die Attributwerte aus. Es
+	 * werden nur die Seiten geparst, die im Template vorkommen. Im
+	 * {@link #regions Bereichsmodus} werden zusätzlich nur die Glyphen
+	 * innerhalb der Attributrahmen extrahiert. Ist ein {@link #cache} gesetzt,
+	 * werden bereits geparste Dokumente von dort gelesen. Große Dokumente
+	 * werden auf mehrere {@link #pageThreads} verteilt, s.
+	 * {@link #parsePages}. Jeder
+	 * Aufruf nutzt einen eigenen {@link TextStripper}, die Methode kann also
+	 * aus mehreren Threads gleichzeitig aufgerufen werden.<br>
+	 * Bei mehreren Templates wird das geparste Layout mit jedem Template
+	 * abgeglichen, das laut {@link #index} in Frage kommt. Wird dort kein
+	 * Kandidat gefunden, werden alle Templates abgeglichen. Gewählt wird das
+	 * Template mit den meisten gefundenen Attributen, bei Gleichstand das mit
+	 * weniger Attributen, also dem höheren Anteil gefundener Attribute,
+	 * danach das zuerst angegebene.
+	 * @param file
+	 * 			PDF-Datei
+	 * @return
+	 * 			Mapping Attributname auf Attributwert, s.
+	 * 			{@link TextStripper#getAttrValues}. Bei mehreren Templates
+	 * 			ist jedes Attribut aus {@link #attrList} belegt, Attribute
+	 * 			anderer Templates mit einem Leerstring, und unter
+	 * 			{@link #TEMPLATE_COLUMN} steht der Name des gewählten
+	 * 			Templates oder ein Leerstring, wenn kein Attribut gefunden
+	 * 			wurde.
+	 * @throws IOException
+	 * 			Fehler beim Lesen der PDF
 	 */
-	public void outputValues(Map<String, Map<String, String>> values) {
-		//Ausgabe auf Konsole
-		System.out.print("Dateiname           ");
-		//Ausgabe der Attributnamen
-		for (Attribute attr : attrList) {
-			System.out.print(attr.name);
-			for (int i = 0; i < 20 - attr.name.length(); i++) {
-				System.out.print(' ');
+	public Map<String, String> extractValues(File file) throws IOException {
+		try (Extraction doc = new Extraction(0, file)) {
+			loadDocument(doc);
+			stripDocument(doc);
+			matchDocument(doc);
+			if (doc.error != null) {
+				throw doc.error;
 			}
+			return doc.values;
 		}
-		System.out.println();		
-		
-		//Ausgabe der Attributwerte
-		for (String file : values.keySet()) {
-			System.out.print(file);
-			for (int i = 0; i < 20 - file.length(); i++) {
-				System.out.print(' ');
+	}
+	
+	/**
+	 * Erste Stufe von {@link #extractValues}: liest das Layout aus dem
+	 * {@link #cache} oder lädt das Dokument. Fehler werden in
+	 * {@link Extraction#error} festgehalten.
+	 * @param doc
+	 * 			Dokument
+	 */
+	void loadDocument(Extraction doc) {
+		try {
+			if (cache != null) {
+				long start = System.nanoTime();
+				doc.key = cache.getKey(doc.file);
+				LayoutCache.Entry entry = cache.get(doc.key);
+				if (entry != null) {
+					doc.stripper = new TextStripper(entry.getTexts());
+					doc.pages = entry.getPages();
+				}
+				metrics.record(Metrics.CACHE, start);
 			}
-			for (Attribute attr : attrList) {
-				String value = values.get(file).get(attr.name);
-				System.out.print(value);
-				for (int i = 0; i < 20 - value.length(); i++) {
-					System.out.print(' ');
+			if (doc.stripper == null) {
+				long start = System.nanoTime();
+				doc.doc = loader.load(doc.file);
+				metrics.record(Metrics.LOAD, start);
+				doc.pages = doc.doc.getNumberOfPages();
+			}
+		} catch (IOException e) {
+			fail(doc, e);
+		} catch (RuntimeException e) {
+			fail(doc, new IOException(e));
+		}
+	}
+	
+	/**
+	 * Zweite Stufe von {@link #extractValues}: parst das geladene Dokument,
+	 * schließt es und legt das Layout im {@link #cache} ab
+	 * @param doc
+	 * 			Dokument nach {@link #loadDocument}
+	 */
+	void stripDocument(Extraction doc) {
+		if (doc.error != null || doc.doc == null) {
+			return;
+		}
+		try {
+			try {
+				long start = System.nanoTime();
+				doc.stripper = parsePages(doc.file, doc.doc);
+				metrics.record(Metrics.STRIP, start);
+			} finally {
+				doc.close();
+			}
+			if (cache != null) {
+				long start = System.nanoTime();
+				cache.put(doc.key, doc.pages, doc.stripper.getTexts());
+				metrics.record(Metrics.CACHE, start);
+			}
+		} catch (IOException e) {
+			fail(doc, e);
+		} catch (RuntimeException e) {
+			fail(doc, new IOException(e));
+		}
+	}
+	
+	/**
+	 * Letzte Stufe von {@link #extractValues}: gleicht das geparste Layout
+	 * mit den Templates ab
+	 * @param doc
+	 * 			Dokument nach {@link #stripDocument}
+	 */
+	void matchDocument(Extraction doc) {
+		if (doc.error != null) {
+			return;
+		}
+		TextStripper stripper = doc.stripper;
+		long start = System.nanoTime();
+		Map<String, String> values;
+		if (!isMultiTemplate()) {
+			values = match(stripper, attrList);
+			metrics.addValues(values);
+		} else {
+			int best = -1;
+			int bestHits = 0;
+			Map<String, String> bestValues = null;
+			List<Integer> candidates = index == null ? null : index.getCandidates(stripper.getTexts(), xTol, yTol);
+			if (candidates != null && candidates.isEmpty()) {
+				//kein Template erkannt, alle abgleichen
+				candidates = null;
+			}
+			for (int c = 0; c < (candidates == null ? templates.size() : candidates.size()); c++) {
+				int i = candidates == null ? c : candidates.get(c);
+				Map<String, String> candidate = match(stripper, templates.get(i));
+				int hits = 0;
+				for (String value : candidate.values()) {
+					if (!"N/A".equals(value)) {
+						hits++;
+					}
 				}
+				if (hits > bestHits || (hits > 0 && hits == bestHits
+						&& templates.get(i).size() < templates.get(best).size())) {
+					best = i;
+					bestHits = hits;
+					bestValues = candidate;
+				}
+			}
+			values = new HashMap<String, String>();
+			for (Attribute attr : attrList) {
+				values.put(attr.name, best < 0 ? "N/A" : "");
 			}
-			System.out.println();
+			if (bestValues != null) {
+				metrics.addValues(bestValues);
+				values.putAll(bestValues);
+			}
+			values.put(TEMPLATE_COLUMN, best < 0 ? "" : templateNames.get(best));
+		}
+		metrics.record(Metrics.MATCH, start);
+		metrics.addDocument(doc.pages);
+		metrics.record(Metrics.DOCUMENT, doc.start);
+		doc.values = values;
+	}
+	
+	/**
+	 * hält den Fehler einer Stufe fest und zählt ihn in den Metriken
+	 */
+	void fail(Extraction doc, IOException e) {
+		doc.error = e;
+		metrics.addFailure();
+	}
+	
+	/**
+	 * @return TextStripper mit den Einstellungen für Roh- und Bereichsmodus
+	 */
+	private TextStripper createStripper() throws IOException {
+		TextStripper stripper = new TextStripper();
+		stripper.setRawGlyphs(rawGlyphs);
+		if (regions) {
+			stripper.setRegions(allAttributes, xTol, yTol);
+		}
+		return stripper;
+	}
+	
+	/**
+	 * Parst die zu lesenden Seiten eines Dokuments. Reichen die Seiten für
+	 * mehrere {@link #pageThreads} mit je {@link #MIN_PAGES_PER_WORKER}
+	 * Seiten, werden sie in zusammenhängende Abschnitte geteilt. Den ersten
+	 * Abschnitt parst der aufrufende Thread im bereits geladenen Dokument,
+	 * jeden weiteren ein Thread aus {@link #getPageExecutor()} in einem
+	 * eigenen, unabhängig geladenen Dokument, da {@link PDDocument} nicht
+	 * threadsicher ist. Die Texte werden in Seitenreihenfolge zusammengeführt.
+	 * @param file
+	 * 			PDF-Datei
+	 * @param doc
+	 * 			bereits geladenes Dokument
+	 * @return TextStripper mit den Texten aller gelesenen Seiten
+	 * @throws IOException
+	 * 			Fehler beim Laden oder Parsen der PDF
+	 */
+	private TextStripper parsePages(final File file, PDDocument doc) throws IOException {
+		List<Integer> pageList = new ArrayList<Integer>();
+		for (int page = 1; page <= doc.getNumberOfPages(); page++) {
+			if (attrPages == null || attrPages.contains(page)) {
+				pageList.add(page);
+			}
+		}
+		int workers = Math.min(pageThreads, pageList.size() / MIN_PAGES_PER_WORKER);
+		if (workers <= 1) {
+			TextStripper stripper = createStripper();
+			stripper.parse(doc, attrPages);
+			return stripper;
 		}
 		
-		//Ausgabe in CSV-Datei
+		int size = pageList.size();
+		List<Future<List<PdfString>>> futures = new ArrayList<Future<List<PdfString>>>(workers - 1);
 		try {
-			BufferedWriter bw = new BufferedWriter(new FileWriter(output));
-			bw.write("Datei;");
-			for (Attribute attr : attrList) {
-				bw.write(attr.name + ';');
-			}
-			bw.newLine();
-			for (String file : values.keySet()) {
-				bw.write(file + ';');
-				for (Attribute attr : attrList) {
-					String value = values.get(file).get(attr.name);
-					bw.write(value + ';');
-				}
-				bw.newLine();
+			for (int w = 1; w < workers; w++) {
+				final Set<Integer> chunk = new TreeSet<Integer>(pageList.subList(w * size / workers, (w + 1) * size / workers));
+				futures.add(submitPages(new Callable<List<PdfString>>() {
+					public List<PdfString> call() throws IOException {
+						try (PDDocument own = loader.load(file)) {
+							TextStripper stripper = createStripper();
+							stripper.parse(own, chunk);
+							return stripper.getTexts();
+						}
+					}
+				}));
 			}
-			bw.close();
-		} catch (IOException e) {
-			System.out.println("[ERROR] Error writing to output file " + output.getAbsolutePath());
-			e.printStackTrace(System.out);
-		}		
+			
+			TextStripper first = createStripper();
+			first.parse(doc, new TreeSet<Integer>(pageList.subList(0, size / workers)));
+			List<PdfString> texts = new ArrayList<PdfString>(first.getTexts());
+			for (Future<List<PdfString>> future : futures) {
+				texts.addAll(waitFor(future));
+			}
+			return new TextStripper(texts);
+		} finally {
+			//bei einem Fehler laufen die übrigen Abschnitte nicht weiter
+			for (Future<List<PdfString>> future : futures) {
+				future.cancel(true);
+			}
+		}
 	}
 	
 	/**
-	 * liest ein Attribut aus der XML-Attributtemplatedatei
-	 * @param node
-	 * 			XML-Node eines Attributs
-	 * @return
-	 * 			{@link Attribute Attributobjekt}
-	 */
-	private Attribute readAttribute(Node node) {
-		System.out.println(node.getTextContent());
-		NodeList attrProp = node.getChildNodes();
-		Attribute ret = new Attribute();
-		for (int i = 0; i < attrProp.getLength(); i++) {
-			Node n = attrProp.item(i);
-			if (n.getNodeName().equals("name")) {
-				ret.name = n.getTextContent();
-			} else if (n.getNodeName().equals("page")) {				
-				ret.page = Integer.parseInt(n.getTextContent());
-			} else if (n.getNodeName().equals("x-start")) {
-				ret.xStart = Float.parseFloat(n.getTextContent());
-			} else if (n.getNodeName().equals("y-start")) {
-				ret.yStart = Float.parseFloat(n.getTextContent());
-			} else if (n.getNodeName().equals("x-end")) {
-				ret.xEnd = Float.parseFloat(n.getTextContent());
-			} else if (n.getNodeName().equals("y-end")) {
-				ret.yEnd = Float.parseFloat(n.getTextContent());
+	 * Führt einen Seitenabschnitt in {@link #getPageExecutor()} aus. Nach
+	 * {@link #shutdown()} läuft er im aufrufenden Thread, damit noch offene
+	 * Aufträge eines ersetzten Extraktors fertig werden.
+	 * @param task
+	 * 			Seitenabschnitt
+	 * @return Ergebnis des Abschnitts
+	 */
+	private <T> Future<T> submitPages(Callable<T> task) {
+		synchronized (this) {
+			if (!closed) {
+				return getPageExecutor().submit(task);
 			}
 		}
+		FutureTask<T> ret = new FutureTask<T>(task);
+		ret.run();
 		return ret;
 	}
 	
+	/**
+	 * Beendet die Threads für die Seitenabschnitte. Laufende Abschnitte
+	 * werden noch fertig, danach werden große Dokumente nicht mehr geteilt.
+	 * Muss gerufen werden, wenn der Extraktor nicht mehr benötigt wird, z.B.
+	 * nach {@link ExtractionServer#reload()}.
+	 */
+	public synchronized void shutdown() {
+		closed = true;
+		if (pageExecutor != null) {
+			pageExecutor.shutdown();
+			pageExecutor = null;
+		}
+	}
+	
+	/**
+	 * @return Threads für die Seitenabschnitte großer Dokumente. Es sind
+	 * 			Daemon-Threads, sie verhindern also nicht das Programmende.
+	 */
+	private synchronized ExecutorService getPageExecutor() {
+		if (pageExecutor == null) {
+			pageExecutor = Executors.newFixedThreadPool(pageThreads - 1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "pages");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pageExecutor;
+	}
+	
+	/**
+	 * Gleicht das geparste Layout mit den Attributen eines Templates ab
+	 * @param stripper
+	 * 			geparstes Dokument
+	 * @param attributes
+	 * 			Attribute des Templates
+	 * @return Mapping Attributname auf Attributwert oder "N/A"
+	 */
+	private Map<String, String> match(TextStripper stripper, List<Attribute> attributes) {
+		if (regions) {
+			return stripper.getRegionValues(attributes, xTol, yTol);
+		}
+		return stripper.getAttrValues(attributes, xTol, yTol);
+	}
+	
+	/**
+	 * Wartet auf das Ergebnis eines parallel verarbeiteten Dokuments.
+	 * @param future
+	 * 			Ergebnis von {@link #extractValues}
+	 * @return
+	 * 			Attributwerte des Dokuments
+	 * @throws IOException
+	 * 			Fehler beim Lesen der PDF oder Unterbrechung beim Warten
+	 */
+	private static <T> T waitFor(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Verarbeitung wurde unterbrochen", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * @return Port des Extraktionsdienstes oder -1 für die Stapelverarbeitung
+	 */
+	public int getPort() {
+		return port;
+	}
+	
+	/**
+	 * @return Anzahl paralleler Threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * @return Attribute in der Reihenfolge des Templates, erst nach
+	 * 			{@link #readAttributes()} gesetzt
+	 */
+	public List<Attribute> getAttributes() {
+		return attrList;
+	}
+	
+	/**
+	 * Gibt bei {@link #console} die Kopfzeile mit den Attributnamen auf der
+	 * Konsole aus. Die Kopfzeilen der Ausgabedateien schreibt der
+	 * {@link ResultWriter}.
+	 */
+	private void outputHeader() {
+		if (!console) {
+			return;
+		}
+		StringBuilder line = new StringBuilder();
+		appendCell(line, "Dateiname");
+		if (isMultiTemplate()) {
+			appendCell(line, TEMPLATE_COLUMN);
+		}
+		//Ausgabe der Attributnamen
+		for (Attribute attr : attrList) {
+			appendCell(line, attr.name);
+		}
+		System.out.println(line);
+	}
+	
+	/**
+	 * Hängt eine Zelle der Konsolentabelle an, aufgefüllt auf 20 Zeichen
+	 * @param line
+	 * 			Zeile
+	 * @param value
+	 * 			Wert
+	 */
+	private static void appendCell(StringBuilder line, String value) {
+		line.append(value);
+		for (int i = 0; i < 20 - String.valueOf(value).length(); i++) {
+			line.append(' ');
+		}
+	}
+	
+	/**
+	 * Methode zur Ausgabe der Attributwerte eines Dokuments. Die Zeile der
+	 * Konsolentabelle wird nur bei {@link #console} und dann in einem Stück
+	 * ausgegeben.
+	 * @param csv
+	 * 			geöffnete Ausgabe
+	 * @param file
+	 * 			Dateiname des Dokuments
+	 * @param values
+	 * 			Attributwerte<br>
+	 * 			SCHLÜSSEL: Attributname
+	 * 			WERT: Attributwert
+	 * @throws IOException
+	 * 			Fehler beim Schreiben in die Ausgabedatei
+	 */
+	void outputValues(ResultWriter csv, String file, Map<String, String> values) throws IOException {
+		long start = System.nanoTime();
+		if (console) {
+			StringBuilder line = new StringBuilder();
+			appendCell(line, file);
+			if (isMultiTemplate()) {
+				appendCell(line, values.get(TEMPLATE_COLUMN));
+			}
+			for (Attribute attr : attrList) {
+				appendCell(line, values.get(attr.name));
+			}
+			System.out.println(line);
+		}
+		
+		//Ausgabe in die Ausgabedatei
+		csv.writeValues(file, values);
+		metrics.record(Metrics.OUTPUT, start);
+	}
+	
 //	private void checkForValuePatterns(Map<String, Map<String, String>> fileValues) {
 //		Map<String, String> leadingPattern = new HashMap<String, String>();
 //		Map<String, String> trailingPattern = new HashMap<String, String>();
@@ -287,11 +1112,27 @@ public class ApplyTemplate {
 	 * @param args
 	 * 		<table summary="Kommandozeilenparameter">
 	 *			<tr><td>--pdfPath</td><td>Pfad des PDF-Eingabeordners</td></tr>
-	 *			<tr><td>--attributes</td><td>Pfad der XML-Attributdatei</td></tr>
-	 *			<tr><td>--output</td><td>Pfad der CSV-Ausgabedatei</td></tr>
+	 *			<tr><td>--attributes</td><td>Pfad der XML-Attributdatei oder eines Verzeichnisses mit Templates, mehrfach möglich</td></tr>
+	 *			<tr><td>--output</td><td>Pfad der Ausgabedatei</td></tr>
+	 *			<tr><td>--format</td><td>Ausgabeformat csv, jsonl, xml oder ein weiteres Format, s. {@link Sinks}</td></tr>
+	 *			<tr><td>--console</td><td>Attributwerte zusätzlich als Tabelle auf der Konsole ausgeben</td></tr>
 	 *			<tr><td>--tolerance</td><td>Toleranzen in X- und Y-Richtung bei der Anwendung der Attribute</td></tr>
 	 *			<tr><td>--xTolerance</td><td>Toleranz in X-Richtung bei der Anwendung der Attribute</td></tr>
 	 *			<tr><td>--yTolerance</td><td>Toleranz in Y-Richtung bei der Anwendung der Attribute</td></tr>
+	 *			<tr><td>--threads</td><td>Anzahl paralleler Threads für die Verarbeitung der PDF-Dokumente</td></tr>
+	 *			<tr><td>--pipeline</td><td>Threads für Laden, Parsen und Abgleich als L:S:M, die Stufen laufen überlappend, s. {@link Pipeline}</td></tr>
+	 *			<tr><td>--pageThreads</td><td>Anzahl paralleler Threads für die Seiten eines einzelnen großen PDF-Dokuments</td></tr>
+	 *			<tr><td>--regions</td><td>nur Text innerhalb der Attributrahmen extrahieren</td></tr>
+	 *			<tr><td>--raw</td><td>Glyphen ohne Layoutanalyse von PDFBox zu Texten gruppieren, s. {@link TextStripper#setRawGlyphs}</td></tr>
+	 *			<tr><td>--memory</td><td>Speichernutzung je PDF-Dokument: heap, temp oder mixed:Größe</td></tr>
+	 *			<tr><td>--tempDir</td><td>Verzeichnis für temporäre Dateien</td></tr>
+	 *			<tr><td>--inputMode</td><td>Lesezugriff auf die PDFs: file oder mmap</td></tr>
+	 *			<tr><td>--cache</td><td>Verzeichnis für zwischengespeicherte Layouts bereits geparster Dokumente</td></tr>
+	 *			<tr><td>--server</td><td>startet einen lokalen HTTP-Extraktionsdienst auf dem angegebenen Port, s. {@link ExtractionServer}</td></tr>
+	 *			<tr><td>--watch</td><td>überwacht das PDF-Eingabeverzeichnis und hängt neue Dokumente an die Ausgabe an, s. {@link InboxWatcher}</td></tr>
+	 *			<tr><td>--incremental</td><td>verarbeitet nur neue oder geänderte Dokumente und übernimmt die übrigen Zeilen aus der bisherigen Ausgabe</td></tr>
+	 *			<tr><td>--metrics</td><td>Pfadpräfix für Laufzeitmetriken als JSON und im Prometheus-Format, s. {@link Metrics}</td></tr>
+	 *			<tr><td>--templateColumn</td><td>bei mehreren Templates eine einzelne Ausgabedatei mit Spalte für das gewählte Template schreiben</td></tr>
 	 * 		</table>
 	 * @throws IllegalArgumentException
 	 * 		ungültiger Kommadozeilenparameter
@@ -299,9 +1140,26 @@ public class ApplyTemplate {
 	private void readArgs(String[] args) throws IllegalArgumentException {
 		pdf = null;
 		output = null;
-		xml = null;
+		xmls = new ArrayList<File>();
+		templateColumn = false;
 		xTol = -1;
 		yTol = -1;
+		threads = 1;
+		boolean threadsGiven = false;
+		pageThreads = 1;
+		pipeline = null;
+		regions = false;
+		rawGlyphs = false;
+		String memorySpec = null;
+		File tempDir = null;
+		String inputSpec = null;
+		String formatSpec = Sinks.DEFAULT_FORMAT;
+		console = false;
+		cacheDir = null;
+		port = -1;
+		watch = false;
+		incremental = false;
+		metricsPrefix = null;
 		
 		if (args.length < 1) {
 			printUsage();
@@ -318,7 +1176,7 @@ public class ApplyTemplate {
 				}
 			} else if (args[i].equals("--attributes")) {
 				if (++i < args.length) {
-					xml = new File(args[i]);
+					addTemplates(new File(args[i]));
 				} else {
 					printUsage();
 					throw new IllegalArgumentException("Nach --attributes muss eine gültige Datei angegeben werden.");
@@ -394,6 +1252,133 @@ public class ApplyTemplate {
 					printUsage();
 					throw new IllegalArgumentException("Nach --yTolerance muss eine Gleitkommazahl Datei angegeben werden.");
 				}
+			} else if (args[i].equals("--threads")) {
+				if (++i < args.length) {
+					try {
+						threads = Integer.parseInt(args[i]);
+						threadsGiven = true;
+					} catch (NumberFormatException e) {
+						printUsage();
+						throw new IllegalArgumentException("Nach --threads muss eine gültige Ganzzahl angegeben werden.");
+					}
+					if (threads < 1) {
+						printUsage();
+						throw new IllegalArgumentException("Die Anzahl der Threads muss mindestens 1 sein.");
+					}
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --threads muss eine Ganzzahl angegeben werden.");
+				}
+			} else if (args[i].equals("--pipeline")) {
+				if (++i < args.length) {
+					String[] stages = args[i].split(":");
+					if (stages.length != 3) {
+						printUsage();
+						throw new IllegalArgumentException("Nach --pipeline müssen drei Threadanzahlen als L:S:M angegeben werden.");
+					}
+					pipeline = new int[3];
+					for (int s = 0; s < 3; s++) {
+						try {
+							pipeline[s] = Integer.parseInt(stages[s]);
+						} catch (NumberFormatException e) {
+							printUsage();
+							throw new IllegalArgumentException("Ungültige Threadanzahl in --pipeline: " + stages[s]);
+						}
+						if (pipeline[s] < 1) {
+							printUsage();
+							throw new IllegalArgumentException("Jede Stufe in --pipeline benötigt mindestens einen Thread.");
+						}
+					}
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --pipeline müssen drei Threadanzahlen als L:S:M angegeben werden.");
+				}
+			} else if (args[i].equals("--pageThreads")) {
+				if (++i < args.length) {
+					try {
+						pageThreads = Integer.parseInt(args[i]);
+					} catch (NumberFormatException e) {
+						printUsage();
+						throw new IllegalArgumentException("Nach --pageThreads muss eine gültige Ganzzahl angegeben werden.");
+					}
+					if (pageThreads < 1) {
+						printUsage();
+						throw new IllegalArgumentException("Die Anzahl der Seiten-Threads muss mindestens 1 sein.");
+					}
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --pageThreads muss eine Ganzzahl angegeben werden.");
+				}
+			} else if (args[i].equals("--regions")) {
+				regions = true;
+			} else if (args[i].equals("--raw")) {
+				rawGlyphs = true;
+			} else if (args[i].equals("--memory")) {
+				if (++i < args.length) {
+					memorySpec = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --memory muss heap, temp oder mixed:Größe angegeben werden.");
+				}
+			} else if (args[i].equals("--tempDir")) {
+				if (++i < args.length) {
+					tempDir = new File(args[i]);
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --tempDir muss ein gültiges Verzeichnis angegeben werden.");
+				}
+			} else if (args[i].equals("--inputMode")) {
+				if (++i < args.length) {
+					inputSpec = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --inputMode muss file oder mmap angegeben werden.");
+				}
+			} else if (args[i].equals("--cache")) {
+				if (++i < args.length) {
+					cacheDir = new File(args[i]);
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --cache muss ein gültiges Verzeichnis angegeben werden.");
+				}
+			} else if (args[i].equals("--metrics")) {
+				if (++i < args.length) {
+					metricsPrefix = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --metrics muss ein Pfadpräfix angegeben werden.");
+				}
+			} else if (args[i].equals("--templateColumn")) {
+				templateColumn = true;
+			} else if (args[i].equals("--console")) {
+				console = true;
+			} else if (args[i].equals("--format")) {
+				if (++i < args.length) {
+					formatSpec = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --format muss ein Ausgabeformat angegeben werden.");
+				}
+			} else if (args[i].equals("--incremental")) {
+				incremental = true;
+			} else if (args[i].equals("--watch")) {
+				watch = true;
+			} else if (args[i].equals("--server")) {
+				if (++i < args.length) {
+					try {
+						port = Integer.parseInt(args[i]);
+					} catch (NumberFormatException e) {
+						printUsage();
+						throw new IllegalArgumentException("Nach --server muss ein gültiger Port angegeben werden.");
+					}
+					if (port < 0 || port > 65535) {
+						printUsage();
+						throw new IllegalArgumentException("Der Port muss zwischen 0 und 65535 liegen.");
+					}
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --server muss ein Port angegeben werden.");
+				}
 			}
 		}
 		
@@ -403,15 +1388,58 @@ public class ApplyTemplate {
 		if (yTol < 0) {
 			yTol = 3;
 		}
-		
-		if (pdf == null) {
+		try {
+			loader = DocumentLoader.parse(memorySpec, tempDir, inputSpec);
+			format = Sinks.forFormat(formatSpec);
+		} catch (IllegalArgumentException e) {
 			printUsage();
-			throw new IllegalArgumentException("Mit --pdfPath muss ein gültiges Verzeichnis angegeben werden.");
+			throw e;
 		}
-		if (xml == null) {
+		
+		if (xmls.isEmpty()) {
 			printUsage();
 			throw new IllegalArgumentException("Mit --attributes muss eine gültige Datei angegeben werden.");
 		}
+		Set<String> names = new TreeSet<String>();
+		for (File xml : xmls) {
+			if (!xml.canRead()) {
+				throw new IllegalArgumentException(xml.getName() + " konnte nicht gelesen werden.");
+			}
+			if (!names.add(getTemplateName(xml))) {
+				throw new IllegalArgumentException("Es existieren mehrere Templates mit dem Namen " + getTemplateName(xml));
+			}
+		}
+		if (incremental && isMultiTemplate() && !templateColumn) {
+			printUsage();
+			throw new IllegalArgumentException("--incremental benötigt bei mehreren Templates --templateColumn.");
+		}
+		if (port >= 0 && watch) {
+			printUsage();
+			throw new IllegalArgumentException("--server und --watch können nicht zusammen angegeben werden.");
+		}
+		if (threadsGiven && pipeline != null) {
+			//die Pipeline legt die Threads je Stufe fest, --threads bliebe wirkungslos
+			printUsage();
+			throw new IllegalArgumentException("--threads und --pipeline können nicht zusammen angegeben werden.");
+		}
+		if (watch && format instanceof XmlSink.Factory) {
+			//das Wurzelelement würde erst beim Beenden geschlossen, die Datei wäre nie gültig
+			printUsage();
+			throw new IllegalArgumentException("--watch kann nicht mit --format " + format.getFormat() + " angegeben werden.");
+		}
+		if (incremental && !(format instanceof CsvSink.Factory)) {
+			//die Zeilen unveränderter Dokumente werden aus der bisherigen CSV-Ausgabe übernommen
+			printUsage();
+			throw new IllegalArgumentException("--incremental ist nur mit --format " + Sinks.DEFAULT_FORMAT + " möglich.");
+		}
+		if (port >= 0) {
+			//im Dienstbetrieb werden die Dokumente einzeln übergeben
+			return;
+		}
+		if (pdf == null) {
+			printUsage();
+			throw new IllegalArgumentException("Mit --pdfPath muss ein gültiges Verzeichnis angegeben werden.");
+		}
 		if (output == null) {
 			printUsage();
 			throw new IllegalArgumentException("Mit --output muss eine gültige Datei angegeben werden.");
@@ -419,26 +1447,71 @@ public class ApplyTemplate {
 		if (!pdf.isDirectory()) {
 			throw new IllegalArgumentException(pdf.getName() + " konnte nicht gelesen werden.");
 		}
-		if (!xml.canRead()) {
-			throw new IllegalArgumentException(xml.getName() + " konnte nicht gelesen werden.");
-		}
 		if (!output.canWrite() && output.exists()) {
 			throw new IllegalArgumentException("Nach " + output.getName() + " kann nicht geschrieben werden.");
 		}
 	}
 	
+	/**
+	 * Fügt ein Template oder alle Templates eines Verzeichnisses hinzu
+	 * @param file
+	 * 			XML-Datei oder Verzeichnis, aus dem alle XML-Dateien nach
+	 * 			Dateinamen sortiert übernommen werden
+	 * @throws IllegalArgumentException
+	 * 			das Verzeichnis enthält keine Templates
+	 */
+	private void addTemplates(File file) throws IllegalArgumentException {
+		if (!file.isDirectory()) {
+			xmls.add(file);
+			return;
+		}
+		File[] files = file.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(".xml");
+			}
+		});
+		if (files == null || files.length == 0) {
+			printUsage();
+			throw new IllegalArgumentException(file.getName() + " enthält keine XML-Templates.");
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return f1.getName().compareTo(f2.getName());
+			}
+		});
+		xmls.addAll(Arrays.asList(files));
+	}
+	
 	/**
 	 * Gibt Kommandozeilenparameter aus 
 	 */
 	private void printUsage() {
 		System.out.println("Nutzung: " + this.getClass().getSimpleName() + " --pdfPath PDF-Verzeichnis --attributes attr.xml"
-				+ " [--output result.csv] [--tolerance Toleranz | --xTolerance X-Toleranz --yTolerance Y-Toleranz]");
+				+ " [--output result.csv] [--format " + String.join("|", Sinks.getFormats()) + "] [--console] [--tolerance Toleranz | --xTolerance X-Toleranz --yTolerance Y-Toleranz]"
+				+ " [--threads Anzahl | --pipeline L:S:M] [--pageThreads Anzahl] [--regions] [--raw] [--memory heap|temp|mixed:Größe] [--tempDir Verzeichnis] [--inputMode file|mmap]"
+				+ " [--cache Verzeichnis] [--server Port] [--watch] [--incremental] [--metrics Präfix] [--templateColumn]");
 		System.out.println();
 		System.out.println("\t--pdfPath            \t\tPDF-Eingabeverzeichnis");
-		System.out.println("\t--attributes         \t\tXML-Datei mit den Attributen");
-		System.out.println("\t--output             \t\tCSV-Ausgabedatei mit Liste der Attributwerte");
+		System.out.println("\t--attributes         \t\tXML-Datei mit den Attributen oder Verzeichnis mit Templates, mehrfach möglich");
+		System.out.println("\t--output             \t\tAusgabedatei mit Liste der Attributwerte");
+		System.out.println("\t--format             \t\tAusgabeformat: " + String.join(", ", Sinks.getFormats()) + " (Standard: " + Sinks.DEFAULT_FORMAT + ")");
+		System.out.println("\t--console            \t\tGibt die Attributwerte zusätzlich als Tabelle auf der Konsole aus");
 		System.out.println("\t--tolerance          \t\tSetzt Toleranz für den Vergleich der Textkoordinaten (float)");
 		System.out.println("\t--xTolerance         \t\tSetzt Toleranz in X-Richtung (float)");
 		System.out.println("\t--yTolerance         \t\tSetzt Toleranz in Y-Richtung (float)");
+		System.out.println("\t--threads            \t\tAnzahl paralleler Threads für die PDF-Verarbeitung (Standard: 1)");
+		System.out.println("\t--pipeline           \t\tThreads für Laden:Parsen:Abgleich, die Stufen laufen überlappend (z.B. 2:4:1), nicht mit --threads");
+		System.out.println("\t--pageThreads        \t\tAnzahl Threads je großem PDF, ab " + MIN_PAGES_PER_WORKER + " Seiten je Thread (Standard: 1)");
+		System.out.println("\t--regions            \t\tExtrahiert nur Text innerhalb der Attributrahmen, auch mehrzeilig");
+		System.out.println("\t--raw                \t\tGruppiert die Glyphen ohne Layoutanalyse von PDFBox, schneller");
+		System.out.println("\t--memory             \t\tSpeichernutzung je PDF: heap, temp oder mixed:Größe (z.B. mixed:64M)");
+		System.out.println("\t--tempDir            \t\tVerzeichnis für temporäre Dateien bei --memory temp/mixed");
+		System.out.println("\t--inputMode          \t\tLesezugriff auf die PDFs: file (Standard) oder mmap (Speicherabbildung)");
+		System.out.println("\t--cache              \t\tVerzeichnis für zwischengespeicherte Layouts geparster PDFs");
+		System.out.println("\t--server             \t\tStartet einen lokalen HTTP-Extraktionsdienst auf dem Port, --pdfPath und --output entfallen");
+		System.out.println("\t--watch              \t\tÜberwacht das PDF-Verzeichnis und hängt neue Dokumente sofort an die Ausgabe an (nicht mit xml)");
+		System.out.println("\t--incremental        \t\tVerarbeitet nur neue oder geänderte PDFs, s. Manifest neben der Ausgabedatei (nur csv)");
+		System.out.println("\t--metrics            \t\tSchreibt Laufzeitmetriken nach Präfix.json und Präfix.prom");
+		System.out.println("\t--templateColumn     \t\tBei mehreren Templates eine Ausgabedatei mit Templatespalte statt einer je Template (ohne: Dokumente ohne passendes Template in Ausgabedatei-" + ResultWriter.UNMATCHED + ")");
 	}
 }
@@ -1,18 +1,31 @@
 package org.paperless.de;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.paperless.de.parser.PdfString;
+import org.paperless.de.parser.SampleAggregate;
 import org.paperless.de.parser.TextStripper;
 import org.paperless.de.util.AttributeXMLExporter;
+import org.paperless.de.util.DocumentLoader;
+import org.paperless.de.util.Metrics;
 
 /**
  * Klasse zur Erstellung einer XML-Templatedatei
@@ -20,6 +33,24 @@ import org.paperless.de.util.AttributeXMLExporter;
  */
 public class CreateTemplate {
 	
+	/**
+	 * Anzahl der Dokumente pro Thread, die im Parallelbetrieb höchstens im
+	 * Voraus eingeplant werden. Begrenzt die Anzahl gleichzeitig geöffneter
+	 * Dokumente.
+	 */
+	private static final int MAX_PENDING_PER_THREAD = 2;
+	
+	/**
+	 * Höchstzahl der Ankertexte, die für die Zuordnung von Dokumenten zu
+	 * Templates gespeichert werden
+	 */
+	private static final int MAX_ANCHORS = 16;
+	
+	/**
+	 * Mindestlänge eines Ankertextes, kürzere Texte sind zu unspezifisch
+	 */
+	private static final int MIN_ANCHOR_LENGTH = 3;
+	
 	/**
 	 * Eingabeverzeichnis mit den PDF-Dateien
 	 */
@@ -31,11 +62,9 @@ public class CreateTemplate {
 	private File output;
 	
 	/**
-	 * <p>enthält geparste Texte</p>
-	 * <p>SCHLÜSSEL: PDF-Dateiname<br>
-	 * WERT: Liste von PDFStrings</p>
+	 * Vergleichsergebnis aller Beispieldokumente mit dem ersten Dokument
 	 */
-	private Map<String, TextStripper> texts;
+	private SampleAggregate aggregate;
 	
 	/**
 	 * Liste mit bereits verwendeten Attributnamen, damit keiner doppelt
@@ -53,11 +82,33 @@ public class CreateTemplate {
 	 */
 	private float yTol;
 	
+	/**
+	 * Anzahl der Threads, mit denen die Beispieldokumente parallel geparst
+	 * werden
+	 */
+	private int threads;
+	
+	/**
+	 * Loader für die PDF-Dokumente mit der gewählten Speichernutzung
+	 */
+	private DocumentLoader loader;
+	
+	/**
+	 * Laufzeitmetriken des Parsens und Vergleichens
+	 */
+	private final Metrics metrics = new Metrics();
+	
+	/**
+	 * Pfadpräfix für die Ausgabe der {@link #metrics Metriken} oder
+	 * <code>null</code>
+	 */
+	private String metricsPrefix;
+	
 	/**
 	 * Wrapper-Klasse für ein PDF-Dokument. Speichert Dateiname und
-	 * geparstes Dokument
+	 * geparstes Dokument. Muss nach der Benutzung geschlossen werden.
 	 */
-	private class DocWrapper {
+	private class DocWrapper implements Closeable {
 		/**
 		 * mit PDFBox geparstes Dokument
 		 */
@@ -76,9 +127,16 @@ public class CreateTemplate {
 		 * 			Fehler beim Lesen der Datei
 		 */
 		public DocWrapper(File file) throws IOException {
-			this.doc = PDDocument.load(file);
+			this.doc = loader.load(file);
 			this.filename = file.getName();
 		}
+		
+		/**
+		 * Schließt das PDF-Dokument
+		 */
+		public void close() throws IOException {
+			doc.close();
+		}
 	};
 	
 	/**
@@ -90,6 +148,11 @@ public class CreateTemplate {
 	 * <tr><td>--tolerance</td><td>Toleranzen in X- und Y-Richtung beim Vergleich der Textpositionen</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in X-Richtung beim Vergleich der Textpositionen</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in Y-Richtung beim Vergleich der Textpositionen</td></tr> 
+	 * <tr><td>--threads</td><td>Anzahl paralleler Threads für das Parsen der Beispieldokumente</td></tr>
+	 * <tr><td>--memory</td><td>Speichernutzung je PDF-Dokument: heap, temp oder mixed:Größe</td></tr>
+	 * <tr><td>--tempDir</td><td>Verzeichnis für temporäre Dateien</td></tr>
+	 * <tr><td>--inputMode</td><td>Lesezugriff auf die PDFs: file oder mmap</td></tr>
+	 * <tr><td>--metrics</td><td>Pfadpräfix für Laufzeitmetriken als JSON und im Prometheus-Format</td></tr>
 	 * </table>
 	 */
 	public static void main(String[] args) {
@@ -116,6 +179,11 @@ public class CreateTemplate {
 	 * <tr><td>--tolerance</td><td>Toleranzen in X- und Y-Richtung beim Vergleich der Textpositionen</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in X-Richtung beim Vergleich der Textpositionen</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in Y-Richtung beim Vergleich der Textpositionen</td></tr> 
+	 * <tr><td>--threads</td><td>Anzahl paralleler Threads für das Parsen der Beispieldokumente</td></tr>
+	 * <tr><td>--memory</td><td>Speichernutzung je PDF-Dokument: heap, temp oder mixed:Größe</td></tr>
+	 * <tr><td>--tempDir</td><td>Verzeichnis für temporäre Dateien</td></tr>
+	 * <tr><td>--inputMode</td><td>Lesezugriff auf die PDFs: file oder mmap</td></tr>
+	 * <tr><td>--metrics</td><td>Pfadpräfix für Laufzeitmetriken als JSON und im Prometheus-Format</td></tr>
 	 * </table>
 	 * @throws IOException
 	 * 			Fehler beim Erstellen der Ausgabedatei
@@ -127,36 +195,129 @@ public class CreateTemplate {
 	}
 	
 	/**
-	 * Parst alle PDF-Dateien im Eingabeordner
+	 * Parst alle PDF-Dateien im Eingabeordner. Das erste Dokument (nach
+	 * Dateinamen) dient als Referenz, alle weiteren werden nacheinander bzw.
+	 * parallel geparst, mit der Referenz verglichen und sofort wieder
+	 * geschlossen. Es sind also nie mehr als einige Dokumente gleichzeitig
+	 * geöffnet.
 	 * @throws IOException
 	 * 			Fehler beim Lesen der Datei
 	 */
 	public void parse() throws IOException {		
-		List <DocWrapper> docs = new ArrayList<DocWrapper>();
 		FilenameFilter filter = new FilenameFilter() {
 			public boolean accept(File dir, String name) {
 				return name.endsWith("pdf");
 			}
 		};
+		File[] files = input.listFiles(filter);
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return f1.getName().compareTo(f2.getName());
+			}
+		});
+		if (files.length == 0) {
+			aggregate = null;
+			return;
+		}
+		
+		aggregate = new SampleAggregate(parseFile(files[0]), xTol, yTol);
 		
-		for (File f : input.listFiles(filter)) {
-			docs.add(new DocWrapper(f));
+		if (threads > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				Deque<Future<Void>> pending = new ArrayDeque<Future<Void>>();
+				for (int i = 1; i < files.length; i++) {
+					final File file = files[i];
+					pending.add(executor.submit(new Callable<Void>() {
+						public Void call() throws IOException {
+							addSample(parseFile(file));
+							return null;
+						}
+					}));
+					while (pending.size() >= threads * MAX_PENDING_PER_THREAD) {
+						waitFor(pending.poll());
+					}
+				}
+				while (!pending.isEmpty()) {
+					waitFor(pending.poll());
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		} else {
+			for (int i = 1; i < files.length; i++) {
+				addSample(parseFile(files[i]));
+			}
 		}
 		
-		texts = new HashMap<String, TextStripper>();
-		for (DocWrapper doc : docs) {
+		if (metricsPrefix != null) {
+			metrics.write(metricsPrefix);
+		}
+	}
+	
+	/**
+	 * Gleicht ein Beispieldokument mit dem Referenzdokument ab
+	 * @param sample
+	 * 			geparstes Beispieldokument
+	 */
+	private void addSample(TextStripper sample) {
+		long start = System.nanoTime();
+		aggregate.add(sample);
+		metrics.record(Metrics.MATCH, start);
+	}
+	
+	/**
+	 * Parst eine einzelne PDF-Datei und schließt sie wieder
+	 * @param file
+	 * 			PDF-Datei
+	 * @return geparste Texte des Dokuments
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 */
+	private TextStripper parseFile(File file) throws IOException {
+		long docStart = System.nanoTime();
+		try (DocWrapper doc = new DocWrapper(file)) {
+			metrics.record(Metrics.LOAD, docStart);
 			System.out.println("Verarbeite " + doc.filename + "...");
 			
+			long start = System.nanoTime();
 			TextStripper stripper = new TextStripper();
 			stripper.parse(doc.doc);
-			
-            texts.put(doc.filename, stripper);
+			metrics.record(Metrics.STRIP, start);
+			metrics.addDocument(doc.doc.getNumberOfPages());
+			metrics.record(Metrics.DOCUMENT, docStart);
+			return stripper;
+		} catch (IOException e) {
+			metrics.addFailure();
+			throw e;
 		}
 	}
 	
 	/**
-	 * Vergleicht zwei der geparsten PDF-Texte und exportiert die Unterschiede
-	 * als Attributliste. Der Nutzer wählt aus, aus welchen unterschiedlichen
+	 * Wartet auf ein parallel verarbeitetes Dokument
+	 * @param future
+	 * 			Ergebnis der Verarbeitung
+	 * @throws IOException
+	 * 			Fehler beim Lesen der PDF oder Unterbrechung beim Warten
+	 */
+	private void waitFor(Future<Void> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Verarbeitung wurde unterbrochen", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Gibt die Texte des Referenzdokuments aus, die sich in mindestens einem
+	 * Beispieldokument unterscheiden, und exportiert sie als Attributliste.
+	 * Der Nutzer wählt aus, aus welchen unterschiedlichen
 	 * Datenfeldern Attribute erstellt werden. Dazu wird eine Liste mit allen
 	 * gefundenen möglichen Attributen angezeigt. Aus diesen kann der Nutzer
 	 * die gewünschten heraussuchen und sie nach Angabe eines Namens in die
@@ -165,40 +326,68 @@ public class CreateTemplate {
 	 * 		Es wurden noch keine 2 PDF-Dateien geparst oder Fehler beim XML-Export
 	 */
 	public void lookForSimilarities() throws Exception {
-		if (texts.size() < 2) {
+		if (aggregate == null || aggregate.getSampleCount() < 1) {
 			throw new IllegalArgumentException("Benötigt min. 2 Dateien zum Vergleich");
 		}
 		
-		List<PdfString> compare = null;
-		TextStripper first = null;
-		String firstName = null;
-		for (String file : texts.keySet()) {
-			if (first == null) {
-				first = texts.get(file);
-				firstName = file;
-			} else {
-				System.out.println("Vergleiche " + firstName + " und " + file + "...");
-				compare = first.compare(texts.get(file), xTol, yTol);
-				break;
-			}
-		}
+		List<PdfString> compare = aggregate.getVariableTexts();
+		int samples = aggregate.getSampleCount();
 		for (PdfString att : compare) {
 			System.out.println();
-			System.out.println(att.getText() + ":\t" + att.getFirstX() + ',' + att.getFirstY() + ',' + att.getLastX() + ',' + att.getLastY());
+			System.out.println(att.getText() + ":\t" + att.getFirstX() + ',' + att.getFirstY() + ',' + att.getLastX() + ',' + att.getLastY()
+					+ "\t(unterschiedlich in " + aggregate.getDifferenceCount(att) + " von " + samples + " Dokumenten)");
 		}
 		
-		exportAttributes(compare);
+		exportAttributes(compare, selectAnchors(aggregate.getStaticTexts()));
+	}
+	
+	/**
+	 * Wählt die Ankertexte des Templates aus den unveränderten Texten der
+	 * ersten Seite. Texte, die dort mehrfach vorkommen, sind mehrdeutig und
+	 * werden übergangen. Gibt es mehr als {@link #MAX_ANCHORS} Texte, werden
+	 * sie gleichmäßig über die Seite verteilt ausgewählt.
+	 * @param statics
+	 * 			Texte, die in allen Beispielen gleich waren
+	 * @return Ankertexte in Dokumentreihenfolge
+	 */
+	private List<PdfString> selectAnchors(List<PdfString> statics) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (PdfString text : statics) {
+			if (text.getPageNum() == 1) {
+				String value = text.getText().trim();
+				Integer count = counts.get(value);
+				counts.put(value, count == null ? 1 : count + 1);
+			}
+		}
+		List<PdfString> candidates = new ArrayList<PdfString>();
+		for (PdfString text : statics) {
+			String value = text.getText().trim();
+			if (text.getPageNum() == 1 && value.length() >= MIN_ANCHOR_LENGTH && counts.get(value) == 1) {
+				candidates.add(text);
+			}
+		}
+		if (candidates.size() <= MAX_ANCHORS) {
+			return candidates;
+		}
+		List<PdfString> ret = new ArrayList<PdfString>(MAX_ANCHORS);
+		for (int i = 0; i < MAX_ANCHORS; i++) {
+			ret.add(candidates.get(i * candidates.size() / MAX_ANCHORS));
+		}
+		return ret;
 	}
 	
 	/**
 	 * Lässt den Nutzer die gewünschten Attribute aus einer Liste mit
 	 * unterschiedlichen Textwerten die Attributliste erstellen.
+	 * Anschließend werden die Ankertexte gespeichert.
 	 * @param attributes
 	 * 			Liste mit möglichen Attributen, also unterschiedliche Texte
+	 * @param anchors
+	 * 			Ankertexte, s. {@link #selectAnchors}
 	 * @throws Exception
 	 * 			Fehler beim XML-Export, s. {@link AttributeXMLExporter}
 	 */
-	private void exportAttributes(List<PdfString> attributes) throws Exception {		
+	private void exportAttributes(List<PdfString> attributes, List<PdfString> anchors) throws Exception {		
 		try (AttributeXMLExporter xml = new AttributeXMLExporter(output);
 				Scanner scanner = new Scanner(System.in);){
 			
@@ -242,6 +431,10 @@ public class CreateTemplate {
 				}
 			}
 			
+			for (PdfString anchor : anchors) {
+				xml.writeAnchor(anchor);
+			}
+			System.out.println(anchors.size() + " Ankertexte für die Zuordnung zum Template gespeichert");
 		}
 	}
 	
@@ -255,6 +448,11 @@ public class CreateTemplate {
 	 * <tr><td>--tolerance</td><td>Toleranzen in X- und Y-Richtung beim Vergleich der Textpositionen</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in X-Richtung beim Vergleich der Textpositionen</td></tr>
 	 * <tr><td>--xTolerance</td><td>Toleranz in Y-Richtung beim Vergleich der Textpositionen</td></tr> 
+	 * <tr><td>--threads</td><td>Anzahl paralleler Threads für das Parsen der Beispieldokumente</td></tr>
+	 * <tr><td>--memory</td><td>Speichernutzung je PDF-Dokument: heap, temp oder mixed:Größe</td></tr>
+	 * <tr><td>--tempDir</td><td>Verzeichnis für temporäre Dateien</td></tr>
+	 * <tr><td>--inputMode</td><td>Lesezugriff auf die PDFs: file oder mmap</td></tr>
+	 * <tr><td>--metrics</td><td>Pfadpräfix für Laufzeitmetriken als JSON und im Prometheus-Format</td></tr>
 	 * </table>
 	 * @throws IllegalArgumentException
 	 * 			ungültiger oder fehlerhaftes Argument
@@ -264,6 +462,11 @@ public class CreateTemplate {
 		output = null;
 		xTol = -1;
 		yTol = -1;
+		threads = 1;
+		String memorySpec = null;
+		File tempDir = null;
+		String inputSpec = null;
+		metricsPrefix = null;
 		
 		if (args.length < 1) {
 			printUsage();
@@ -349,6 +552,50 @@ public class CreateTemplate {
 					printUsage();
 					throw new IllegalArgumentException("Nach --yTolerance muss eine Gleitkommazahl Datei angegeben werden.");
 				}
+			} else if (args[i].equals("--threads")) {
+				if (++i < args.length) {
+					try {
+						threads = Integer.parseInt(args[i]);
+					} catch (NumberFormatException e) {
+						printUsage();
+						throw new IllegalArgumentException("Nach --threads muss eine gültige Ganzzahl angegeben werden.");
+					}
+					if (threads < 1) {
+						printUsage();
+						throw new IllegalArgumentException("Die Anzahl der Threads muss mindestens 1 sein.");
+					}
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --threads muss eine Ganzzahl angegeben werden.");
+				}
+			} else if (args[i].equals("--memory")) {
+				if (++i < args.length) {
+					memorySpec = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --memory muss heap, temp oder mixed:Größe angegeben werden.");
+				}
+			} else if (args[i].equals("--metrics")) {
+				if (++i < args.length) {
+					metricsPrefix = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --metrics muss ein Pfadpräfix angegeben werden.");
+				}
+			} else if (args[i].equals("--tempDir")) {
+				if (++i < args.length) {
+					tempDir = new File(args[i]);
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --tempDir muss ein gültiges Verzeichnis angegeben werden.");
+				}
+			} else if (args[i].equals("--inputMode")) {
+				if (++i < args.length) {
+					inputSpec = args[i];
+				} else {
+					printUsage();
+					throw new IllegalArgumentException("Nach --inputMode muss file oder mmap angegeben werden.");
+				}
 			}
 		}
 		
@@ -358,6 +605,12 @@ public class CreateTemplate {
 		if (yTol < 0) {
 			yTol = 3;
 		}
+		try {
+			loader = DocumentLoader.parse(memorySpec, tempDir, inputSpec);
+		} catch (IllegalArgumentException e) {
+			printUsage();
+			throw e;
+		}
 		
 		if (input == null) {
 			printUsage();
@@ -377,12 +630,19 @@ public class CreateTemplate {
 	 */
 	private void printUsage() {
 		System.out.println("Nutzung: " + this.getClass().getSimpleName() + " --input dateipfad"
-				+ "--output attr.xml [--tolerance Toleranz | --xTolerance X-Toleranz --yTolerance Y-Toleranz]");
+				+ "--output attr.xml [--tolerance Toleranz | --xTolerance X-Toleranz --yTolerance Y-Toleranz]"
+				+ " [--threads Anzahl] [--memory heap|temp|mixed:Größe] [--tempDir Verzeichnis] [--inputMode file|mmap]"
+				+ " [--metrics Präfix]");
 		System.out.println();
 		System.out.println("\t--input              \t\tPDF-Eingabeverzeichnis");
 		System.out.println("\t--output             \t\tXML-Attributdate");
 		System.out.println("\t--tolerance          \t\tSetzt Toleranz für den Vergleich der Textkoordinaten (float)");
 		System.out.println("\t--xTolerance         \t\tSetzt Toleranz in X-Richtung (float)");
 		System.out.println("\t--yTolerance         \t\tSetzt Toleranz in Y-Richtung (float)");
+		System.out.println("\t--threads            \t\tAnzahl paralleler Threads für das Parsen (Standard: 1)");
+		System.out.println("\t--memory             \t\tSpeichernutzung je PDF: heap, temp oder mixed:Größe (z.B. mixed:64M)");
+		System.out.println("\t--tempDir            \t\tVerzeichnis für temporäre Dateien bei --memory temp/mixed");
+		System.out.println("\t--inputMode          \t\tLesezugriff auf die PDFs: file (Standard) oder mmap (Speicherabbildung)");
+		System.out.println("\t--metrics            \t\tSchreibt Laufzeitmetriken nach Präfix.json und Präfix.prom");
 	}
 }
@@ -0,0 +1,89 @@
+package org.paperless.de;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.paperless.de.parser.TextStripper;
+
+/**
+ * Zwischenstand der Verarbeitung eines Dokuments. Wird von den Stufen
+ * {@link ApplyTemplate#loadDocument}, {@link ApplyTemplate#stripDocument}
+ * und {@link ApplyTemplate#matchDocument} nacheinander befüllt, s.
+ * {@link Pipeline}.
+ *
+ * @author nba
+ */
+class Extraction implements Closeable {
+
+	/**
+	 * Position der Datei in der Eingabe, bestimmt die Reihenfolge der Ausgabe
+	 */
+	final int seq;
+
+	/**
+	 * PDF-Datei
+	 */
+	final File file;
+
+	/**
+	 * Beginn der Verarbeitung in Nanosekunden
+	 */
+	final long start = System.nanoTime();
+
+	/**
+	 * Schlüssel im Layout-Cache oder <code>null</code>
+	 */
+	String key;
+
+	/**
+	 * geladenes Dokument, bis es geparst ist
+	 */
+	PDDocument doc;
+
+	/**
+	 * Seitenzahl des Dokuments, bei Treffern im Cache aus dem Cache-Eintrag
+	 */
+	int pages;
+
+	/**
+	 * geparstes Dokument
+	 */
+	TextStripper stripper;
+
+	/**
+	 * Attributwerte, s. {@link ApplyTemplate#extractValues}
+	 */
+	Map<String, String> values;
+
+	/**
+	 * Fehler in einer der Stufen, die folgenden Stufen werden dann
+	 * übersprungen
+	 */
+	IOException error;
+
+	/**
+	 * Konstruktor
+	 * @param seq
+	 * 			Position der Datei in der Eingabe
+	 * @param file
+	 * 			PDF-Datei
+	 */
+	Extraction(int seq, File file) {
+		this.seq = seq;
+		this.file = file;
+	}
+
+	/**
+	 * Schließt das Dokument, falls es noch geöffnet ist
+	 */
+	public void close() throws IOException {
+		if (doc != null) {
+			PDDocument open = doc;
+			doc = null;
+			open.close();
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package org.paperless.de;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.paperless.de.util.Attribute;
+import org.paperless.de.util.Json;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>Langlaufender Extraktionsdienst. Hält Template und PDFBox in einer JVM
+ * bereit und nimmt Extraktionsaufträge über HTTP auf der Loopback-Schnittstelle
+ * entgegen. Gestartet über {@link ApplyTemplate} mit <code>--server Port</code>,
+ * alle weiteren Parameter gelten wie bei der Stapelverarbeitung.</p>
+ * <table summary="Endpunkte">
+ * <tr><td>POST /extract?file=Pfad</td><td>extrahiert die Attributwerte der
+ * angegebenen PDF-Datei</td></tr>
+ * <tr><td>POST /extract</td><td>extrahiert die Attributwerte der im Body
+ * übertragenen PDF-Datei</td></tr>
+ * <tr><td>POST /reload</td><td>liest das Template neu ein, ohne den Dienst
+ * neu zu starten</td></tr>
+ * <tr><td>GET /status</td><td>gibt die Anzahl der Attribute und bearbeiteter
+ * Aufträge aus</td></tr>
+ * </table>
+ * <p>Antworten werden als JSON geschrieben.</p>
+ *
+ * @author nba
+ */
+public class ExtractionServer {
+
+	/**
+	 * Kommandozeilenparameter, mit denen beim Neuladen ein neuer
+	 * {@link ApplyTemplate} erstellt wird
+	 */
+	private final String[] args;
+
+	/**
+	 * aktuell genutzter Extraktor. Wird beim Neuladen als Ganzes ersetzt,
+	 * laufende Aufträge arbeiten mit dem alten Stand zu Ende.
+	 */
+	private volatile ApplyTemplate extractor;
+
+	/**
+	 * Port auf der Loopback-Schnittstelle
+	 */
+	private final int port;
+
+	/**
+	 * Anzahl bearbeiteter Extraktionsaufträge
+	 */
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * HTTP-Server, nach {@link #start()} gesetzt
+	 */
+	private HttpServer server;
+
+	/**
+	 * Konstruktor
+	 * @param args
+	 * 			Kommandozeilenparameter von {@link ApplyTemplate}
+	 * @param extractor
+	 * 			Extraktor mit bereits gelesenem Template
+	 * @param port
+	 * 			Port auf der Loopback-Schnittstelle
+	 */
+	public ExtractionServer(String[] args, ApplyTemplate extractor, int port) {
+		this.args = args;
+		this.extractor = extractor;
+		this.port = port;
+	}
+
+	/**
+	 * Startet den Dienst. Die Methode kehrt sofort zurück, die Aufträge werden
+	 * von einem Threadpool mit {@link ApplyTemplate#getThreads()} Threads
+	 * bearbeitet.
+	 * @throws IOException
+	 * 			der Port konnte nicht geöffnet werden
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/extract", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleExtract(exchange);
+			}
+		});
+		server.createContext("/reload", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleReload(exchange);
+			}
+		});
+		server.createContext("/status", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleStatus(exchange);
+			}
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(extractor.getThreads());
+		server.setExecutor(executor);
+		server.start();
+		extractor.startPeriodicMetrics();
+		System.out.println("Extraktionsdienst läuft auf http://" + InetAddress.getLoopbackAddress().getHostAddress()
+				+ ':' + server.getAddress().getPort());
+	}
+
+	/**
+	 * Beendet den Dienst und die Seiten-Threads des Extraktors. Wird beim
+	 * Beenden der JVM, z.B. mit Strg+C, über einen Shutdown-Hook gerufen,
+	 * s. {@link ApplyTemplate#main}.
+	 */
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			((ExecutorService) server.getExecutor()).shutdown();
+		}
+		extractor.shutdown();
+	}
+
+	/**
+	 * Liest das Template neu ein und ersetzt den Extraktor. Der alte
+	 * Extraktor wird beendet, noch laufende Aufträge werden damit fertig.
+	 * @throws Exception
+	 * 			Fehler beim Lesen des Templates, der alte Stand bleibt dann
+	 * 			erhalten
+	 */
+	public synchronized void reload() throws Exception {
+		ApplyTemplate fresh = new ApplyTemplate(args);
+		fresh.readAttributes();
+		//Metriken laufen über das Neuladen hinweg weiter
+		fresh.setMetrics(extractor.getMetrics());
+		ApplyTemplate old = extractor;
+		extractor = fresh;
+		old.shutdown();
+	}
+
+	/**
+	 * Bearbeitet einen Extraktionsauftrag
+	 */
+	private void handleExtract(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			sendError(exchange, 405, "Nur POST erlaubt");
+			return;
+		}
+		ApplyTemplate current = extractor;
+		String path = getQuery(exchange).get("file");
+		File file;
+		File tmp = null;
+		if (path != null) {
+			file = new File(path);
+			if (!file.isFile()) {
+				sendError(exchange, 404, path + " konnte nicht gelesen werden.");
+				return;
+			}
+		} else {
+			//PDF im Body, wird für den Loader in eine temporäre Datei geschrieben
+			tmp = File.createTempFile("extract", ".pdf");
+			try (InputStream in = exchange.getRequestBody()) {
+				Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			file = tmp;
+		}
+
+		try {
+			Map<String, String> values = current.extractValues(file);
+			requests.incrementAndGet();
+
+			StringBuilder json = new StringBuilder();
+			json.append("{\"file\":");
+			Json.appendQuoted(json, path != null ? path : "");
+			if (values.containsKey(ApplyTemplate.TEMPLATE_COLUMN)) {
+				json.append(",\"template\":");
+				Json.appendQuoted(json, values.get(ApplyTemplate.TEMPLATE_COLUMN));
+			}
+			json.append(",\"values\":{");
+			boolean first = true;
+			for (Attribute attr : current.getAttributes()) {
+				if (!first) {
+					json.append(',');
+				}
+				first = false;
+				Json.appendQuoted(json, attr.name);
+				json.append(':');
+				Json.appendQuoted(json, values.get(attr.name));
+			}
+			json.append("}}");
+			send(exchange, 200, json.toString());
+		} catch (IOException e) {
+			sendError(exchange, 422, "Fehler beim Lesen der PDF: " + e.getMessage());
+		} catch (RuntimeException e) {
+			//z.B. aus PDFBox oder dem Abgleich, der Client erhält trotzdem eine Antwort
+			sendError(exchange, 500, "Fehler bei der Extraktion: " + e);
+		} catch (Error e) {
+			//PDFBox wirft bei defekten Dateien z.B. StackOverflowError, ohne Antwort hinge der Client
+			sendError(exchange, 500, "Fehler bei der Extraktion: " + e);
+			if (e instanceof VirtualMachineError && !(e instanceof StackOverflowError)) {
+				//z.B. OutOfMemoryError, die JVM ist danach nicht mehr verlässlich
+				throw e;
+			}
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Bearbeitet einen Auftrag zum Neuladen des Templates
+	 */
+	private void handleReload(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			sendError(exchange, 405, "Nur POST erlaubt");
+			return;
+		}
+		try {
+			reload();
+			send(exchange, 200, "{\"status\":\"ok\",\"attributes\":" + extractor.getAttributes().size() + "}");
+		} catch (Exception e) {
+			sendError(exchange, 500, "Template konnte nicht geladen werden: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Gibt den Zustand des Dienstes aus
+	 */
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		ApplyTemplate current = extractor;
+		send(exchange, 200, "{\"status\":\"ok\",\"attributes\":" + current.getAttributes().size()
+				+ ",\"requests\":" + requests.get() + "}");
+	}
+
+	/**
+	 * Schreibt eine Fehlerantwort
+	 */
+	private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+		send(exchange, code, "{\"status\":\"error\",\"message\":" + Json.quote(message) + "}");
+	}
+
+	/**
+	 * Schreibt eine JSON-Antwort
+	 */
+	private static void send(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Liest die Query-Parameter einer Anfrage
+	 * @return Mapping Parametername auf dekodierten Wert
+	 */
+	private static Map<String, String> getQuery(HttpExchange exchange) throws UnsupportedEncodingException {
+		Map<String, String> ret = new HashMap<String, String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return ret;
+		}
+		for (String param : query.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0) {
+				ret.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,363 @@
+package org.paperless.de;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Überwacht ein Eingangsverzeichnis per {@link WatchService} und wendet
+ * das Template auf jede neu eintreffende PDF-Datei an. Die Ergebnisse werden
+ * sofort an die Ausgabe angehängt, das Verzeichnis wird dabei nicht
+ * erneut vollständig gelesen.</p>
+ * <p>Dateien, die noch geschrieben werden, werden zurückgestellt: eine Datei
+ * wird erst verarbeitet, wenn sich Größe und Änderungszeitpunkt seit
+ * {@link #STABLE_MILLIS} nicht mehr geändert haben. Eine bereits verarbeitete
+ * Datei wird nur erneut verarbeitet, wenn sie sich danach ändert. Das gilt
+ * auch für die beim Start vorhandenen Dateien, s. {@link #admit}.</p>
+ *
+ * @author nba
+ */
+public class InboxWatcher {
+
+	/**
+	 * Zeit in Millisekunden, die eine Datei unverändert sein muss, bevor sie
+	 * verarbeitet wird
+	 */
+	private static final long STABLE_MILLIS = 500;
+
+	/**
+	 * Intervall in Millisekunden, in dem zurückgestellte Dateien geprüft
+	 * werden
+	 */
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * Größe und Änderungszeitpunkt einer Datei
+	 */
+	private static class FileState {
+
+		/**
+		 * Dateigröße in Bytes
+		 */
+		final long size;
+
+		/**
+		 * Änderungszeitpunkt der Datei laut Dateisystem in Millisekunden
+		 */
+		final long modified;
+
+		/**
+		 * Zeitpunkt der letzten beobachteten Änderung in Millisekunden
+		 */
+		long changedAt;
+
+		/**
+		 * Konstruktor
+		 * @param size
+		 * 			Dateigröße in Bytes
+		 * @param modified
+		 * 			Änderungszeitpunkt laut Dateisystem
+		 * @param changedAt
+		 * 			Zeitpunkt, zu dem dieser Stand beobachtet wurde
+		 */
+		FileState(long size, long modified, long changedAt) {
+			this.size = size;
+			this.modified = modified;
+			this.changedAt = changedAt;
+		}
+
+		/**
+		 * Vergleicht Größe und Änderungszeitpunkt der Datei. Solange beide
+		 * gleich bleiben, wird die Datei nicht mehr geschrieben, und nach
+		 * {@link #STABLE_MILLIS} gilt sie als stabil. {@link #changedAt} geht
+		 * nicht ein: es ist der Zeitpunkt der Beobachtung, nicht Teil des
+		 * Dateistands, und wäre bei jedem {@link #readState} neu.
+		 * @param other
+		 * 			früherer Stand oder <code>null</code>
+		 * @return <code>true</code>, wenn sich die Datei seit dem früheren
+		 * 			Stand nicht geändert hat
+		 */
+		boolean sameAs(FileState other) {
+			return other != null && size == other.size && modified == other.modified;
+		}
+	}
+
+	/**
+	 * Extraktor mit gelesenem Template
+	 */
+	private final ApplyTemplate extractor;
+
+	/**
+	 * überwachtes Verzeichnis
+	 */
+	private final Path dir;
+
+	/**
+	 * geöffnete Ausgabe, Zugriffe werden darüber synchronisiert
+	 */
+	private final ResultWriter csv;
+
+	/**
+	 * Threads für die Verarbeitung oder <code>null</code> bei sequentieller
+	 * Verarbeitung im überwachenden Thread
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * WatchService für {@link #dir}
+	 */
+	private final WatchService watcher;
+
+	/**
+	 * zurückgestellte Dateien in Reihenfolge des Eintreffens
+	 */
+	private final Map<Path, FileState> pending = new LinkedHashMap<Path, FileState>();
+
+	/**
+	 * Stand der bereits verarbeiteten Dateien, gelöschte Dateien werden
+	 * entfernt
+	 */
+	private final Map<Path, FileState> processed = new HashMap<Path, FileState>();
+
+	/**
+	 * Konstruktor, registriert die Überwachung sofort. Dateien, die danach
+	 * eintreffen, gehen also nicht verloren, auch wenn {@link #run()} erst
+	 * später aufgerufen wird.
+	 * @param extractor
+	 * 			Extraktor mit bereits gelesenem Template
+	 * @param dir
+	 * 			Eingangsverzeichnis
+	 * @param csv
+	 * 			geöffnete Ausgabe mit bereits geschriebenen Kopfzeilen
+	 * @throws IOException
+	 * 			das Verzeichnis kann nicht überwacht werden
+	 */
+	InboxWatcher(ApplyTemplate extractor, File dir, ResultWriter csv) throws IOException {
+		this.extractor = extractor;
+		this.dir = dir.toPath();
+		this.csv = csv;
+		this.executor = extractor.getThreads() > 1 ? Executors.newFixedThreadPool(extractor.getThreads()) : null;
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+	/**
+	 * Teilt die beim Start vorhandenen Dateien auf. Dateien, die seit
+	 * {@link #STABLE_MILLIS} unverändert sind, werden mit ihrem jetzigen Stand
+	 * als verarbeitet markiert und sollen vom Aufrufer verarbeitet werden.
+	 * Ändert sich eine solche Datei danach noch, wird sie erneut verarbeitet.
+	 * Alle übrigen Dateien werden noch geschrieben und wie neu eintreffende
+	 * Dateien zurückgestellt.
+	 * @param files
+	 * 			beim Start vorhandene PDF-Dateien
+	 * @return Dateien, die der Aufrufer sofort verarbeiten soll, in
+	 * 			derselben Reihenfolge
+	 */
+	public File[] admit(File[] files) {
+		long now = System.currentTimeMillis();
+		List<File> ret = new ArrayList<File>(files.length);
+		for (File file : files) {
+			FileState state = readState(file.toPath());
+			if (state == null) {
+				continue;
+			}
+			if (now - state.modified >= STABLE_MILLIS) {
+				processed.put(file.toPath(), state);
+				ret.add(file);
+			} else {
+				pending.put(file.toPath(), state);
+			}
+		}
+		return ret.toArray(new File[ret.size()]);
+	}
+
+	/**
+	 * Überwacht das Verzeichnis, bis der Thread unterbrochen wird
+	 * @throws IOException
+	 * 			das Verzeichnis ist nicht mehr verfügbar oder Fehler beim
+	 * 			Schreiben der Ausgabe
+	 */
+	public void run() throws IOException {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							//Ereignisse verloren, nur in diesem Fall wird das Verzeichnis gelesen
+							rescan();
+						} else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+							Path path = dir.resolve((Path) event.context());
+							pending.remove(path);
+							processed.remove(path);
+						} else {
+							offer(dir.resolve((Path) event.context()));
+						}
+					}
+					if (!key.reset()) {
+						throw new IOException("Das Verzeichnis " + dir + " kann nicht mehr überwacht werden.");
+					}
+				}
+				processStable();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			watcher.close();
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Stellt eine PDF-Datei zurück bzw. setzt ihre Wartezeit neu, wenn sie
+	 * sich geändert hat
+	 * @param path
+	 * 			Datei aus einem Ereignis
+	 */
+	private void offer(Path path) {
+		String name = path.getFileName().toString();
+		if (!name.endsWith(".pdf") && !name.endsWith(".PDF")) {
+			return;
+		}
+		FileState state = readState(path);
+		if (state == null) {
+			return;
+		}
+		FileState old = pending.get(path);
+		if (!state.sameAs(old)) {
+			pending.put(path, state);
+		}
+	}
+
+	/**
+	 * Stellt alle PDF-Dateien des Verzeichnisses zurück und vergisst
+	 * gelöschte Dateien, nach verlorenen Ereignissen
+	 * @throws IOException
+	 * 			Fehler beim Lesen des Verzeichnisses
+	 */
+	private void rescan() throws IOException {
+		Iterator<Path> it = processed.keySet().iterator();
+		while (it.hasNext()) {
+			if (!Files.isRegularFile(it.next())) {
+				it.remove();
+			}
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path path : stream) {
+				offer(path);
+			}
+		}
+	}
+
+	/**
+	 * Verarbeitet alle zurückgestellten Dateien, die seit
+	 * {@link #STABLE_MILLIS} unverändert sind
+	 * @throws IOException
+	 * 			Fehler beim Schreiben der Ausgabe
+	 */
+	private void processStable() throws IOException {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<Path, FileState>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Path, FileState> entry = it.next();
+			Path path = entry.getKey();
+			FileState state = readState(path);
+			if (state == null) {
+				//gelöscht oder umbenannt, bevor sie fertig war
+				it.remove();
+			} else if (!state.sameAs(entry.getValue())) {
+				entry.setValue(state);
+			} else if (now - entry.getValue().changedAt >= STABLE_MILLIS) {
+				it.remove();
+				if (!state.sameAs(processed.get(path))) {
+					processed.put(path, state);
+					submit(path.toFile());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Verarbeitet eine Datei und hängt das Ergebnis an die Ausgabe an
+	 * @param file
+	 * 			fertig geschriebene PDF-Datei
+	 * @throws IOException
+	 * 			Fehler beim Schreiben der Ausgabe
+	 */
+	private void submit(final File file) throws IOException {
+		if (executor == null) {
+			process(file);
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					process(file);
+				} catch (IOException e) {
+					System.out.println("[WARN] Ausgabe für " + file.getName() + " konnte nicht geschrieben werden: "
+							+ e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Extrahiert die Attributwerte einer Datei und schreibt sie sofort in die
+	 * Ausgabe. Eine fehlerhafte PDF beendet die Überwachung nicht, auch wenn
+	 * PDFBox dabei eine RuntimeException wirft.
+	 * @param file
+	 * 			PDF-Datei
+	 * @throws IOException
+	 * 			Fehler beim Schreiben der Ausgabe
+	 */
+	private void process(File file) throws IOException {
+		Map<String, String> values;
+		try {
+			values = extractor.extractValues(file);
+		} catch (IOException e) {
+			System.out.println("[WARN] " + file.getName() + " konnte nicht gelesen werden: " + e.getMessage());
+			return;
+		} catch (RuntimeException e) {
+			System.out.println("[WARN] " + file.getName() + " konnte nicht gelesen werden: " + e);
+			return;
+		}
+		synchronized (csv) {
+			extractor.outputValues(csv, file.getName(), values);
+			csv.flush();
+		}
+	}
+
+	/**
+	 * liest Größe und Änderungszeitpunkt einer Datei
+	 * @param path
+	 * 			Datei
+	 * @return aktueller Stand oder <code>null</code>, wenn die Datei nicht
+	 * 			(mehr) existiert
+	 */
+	private static FileState readState(Path path) {
+		File file = path.toFile();
+		if (!file.isFile()) {
+			return null;
+		}
+		return new FileState(file.length(), file.lastModified(), System.currentTimeMillis());
+	}
+}
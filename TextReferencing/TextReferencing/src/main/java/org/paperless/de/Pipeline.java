@@ -0,0 +1,268 @@
+package org.paperless.de;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Verarbeitet die Dokumente in getrennten Stufen, damit Lesen von der
+ * Platte und Parsen sich überlappen: Laden ({@link ApplyTemplate#loadDocument}),
+ * Parsen ({@link ApplyTemplate#stripDocument}), Abgleich
+ * ({@link ApplyTemplate#matchDocument}) und Ausgabe. Jede der ersten drei
+ * Stufen hat eine eigene Anzahl Threads, zwischen den Stufen liegen
+ * begrenzte Warteschlangen. Ist eine Stufe zu langsam, blockieren die
+ * vorherigen, sobald ihre Warteschlange voll ist.</p>
+ * <p>Jedes Dokument wird an die nächste Stufe weitergereicht, auch wenn eine
+ * Stufe mit einem Fehler abbricht, z.B. einem {@link StackOverflowError}
+ * aus PDFBox. Der Fehler wird in {@link Extraction#error} festgehalten und
+ * von der Ausgabe gemeldet, die Ausgabe wartet also nie auf ein
+ * verlorenes Dokument.</p>
+ * <p>Die Ausgabe erfolgt im aufrufenden Thread in Reihenfolge der Eingabe.
+ * Früher fertige Dokumente warten in einem Puffer, dessen Größe ebenso wie
+ * die Anzahl gleichzeitig geladener Dokumente durch {@link #window}
+ * begrenzt ist.</p>
+ *
+ * @author nba
+ */
+class Pipeline {
+
+	/**
+	 * Plätze je Thread der folgenden Stufe in einer Warteschlange
+	 */
+	private static final int QUEUE_PER_THREAD = 2;
+
+	/**
+	 * Markierung für das Ende einer Warteschlange
+	 */
+	private static final Extraction END = new Extraction(-1, null);
+
+	/**
+	 * Extraktor mit gelesenem Template
+	 */
+	private final ApplyTemplate extractor;
+
+	/**
+	 * Anzahl Threads je Stufe: Laden, Parsen, Abgleich
+	 */
+	private final int loaders, strippers, matchers;
+
+	/**
+	 * Anzahl der Dokumente, die höchstens gleichzeitig zwischen Laden und
+	 * Ausgabe sein dürfen
+	 */
+	private final int window;
+
+	/**
+	 * Konstruktor
+	 * @param extractor
+	 * 			Extraktor mit bereits gelesenem Template
+	 * @param loaders
+	 * 			Threads zum Laden der Dokumente
+	 * @param strippers
+	 * 			Threads zum Parsen der Dokumente
+	 * @param matchers
+	 * 			Threads für den Abgleich mit den Templates
+	 */
+	Pipeline(ApplyTemplate extractor, int loaders, int strippers, int matchers) {
+		this.extractor = extractor;
+		this.loaders = loaders;
+		this.strippers = strippers;
+		this.matchers = matchers;
+		this.window = (loaders + strippers + matchers) * (QUEUE_PER_THREAD + 1);
+	}
+
+	/**
+	 * Verarbeitet die Dateien und schreibt die Ergebnisse in Reihenfolge der
+	 * Dateien
+	 * @param csv
+	 * 			geöffnete Ausgabe
+	 * @param files
+	 * 			PDF-Dateien in Ausgabereihenfolge
+	 * @param kept
+	 * 			bisherige Ausgabe mit den Zeilen, die ohne Verarbeitung
+	 * 			übernommen werden
+	 * @throws IOException
+	 * 			Fehler beim Lesen einer PDF oder beim Schreiben der Ausgabe
+	 */
+	void run(ResultWriter csv, final File[] files, final PreviousOutput kept) throws IOException {
+		final BlockingQueue<Extraction> loaded = new ArrayBlockingQueue<Extraction>(strippers * QUEUE_PER_THREAD);
+		final BlockingQueue<Extraction> stripped = new ArrayBlockingQueue<Extraction>(matchers * QUEUE_PER_THREAD);
+		final BlockingQueue<Extraction> matched = new ArrayBlockingQueue<Extraction>(window);
+		final Semaphore permits = new Semaphore(window);
+		final AtomicInteger next = new AtomicInteger();
+
+		ExecutorService loadPool = Executors.newFixedThreadPool(loaders);
+		ExecutorService stripPool = Executors.newFixedThreadPool(strippers);
+		ExecutorService matchPool = Executors.newFixedThreadPool(matchers);
+		try {
+			final AtomicInteger activeLoaders = new AtomicInteger(loaders);
+			for (int i = 0; i < loaders; i++) {
+				loadPool.execute(new Runnable() {
+					public void run() {
+						try {
+							while (true) {
+								//Platz vor der Datei belegen: so hat die älteste offene Datei immer
+								//einen Platz und die Ausgabe kann nicht blockieren
+								permits.acquire();
+								int seq = next.getAndIncrement();
+								if (seq >= files.length) {
+									permits.release();
+									break;
+								}
+								if (kept.isKept(files[seq].getName())) {
+									permits.release();
+									continue;
+								}
+								Extraction doc = new Extraction(seq, files[seq]);
+								try {
+									extractor.loadDocument(doc);
+								} catch (Throwable e) {
+									fail(doc, e);
+								}
+								try {
+									loaded.put(doc);
+								} catch (InterruptedException e) {
+									discard(doc);
+									throw e;
+								}
+							}
+							finish(activeLoaders, loaded, strippers);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+
+			final AtomicInteger activeStrippers = new AtomicInteger(strippers);
+			for (int i = 0; i < strippers; i++) {
+				stripPool.execute(new Runnable() {
+					public void run() {
+						try {
+							for (Extraction doc = loaded.take(); doc != END; doc = loaded.take()) {
+								try {
+									extractor.stripDocument(doc);
+								} catch (Throwable e) {
+									fail(doc, e);
+								}
+								stripped.put(doc);
+							}
+							finish(activeStrippers, stripped, matchers);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+
+			for (int i = 0; i < matchers; i++) {
+				matchPool.execute(new Runnable() {
+					public void run() {
+						try {
+							for (Extraction doc = stripped.take(); doc != END; doc = stripped.take()) {
+								try {
+									extractor.matchDocument(doc);
+								} catch (Throwable e) {
+									fail(doc, e);
+								}
+								matched.put(doc);
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+
+			write(csv, files, kept, matched, permits);
+		} finally {
+			loadPool.shutdownNow();
+			stripPool.shutdownNow();
+			matchPool.shutdownNow();
+			//noch geladene Dokumente schließen, z.B. nach einem Fehler
+			for (Extraction doc : loaded) {
+				discard(doc);
+			}
+		}
+	}
+
+	/**
+	 * Hält einen unerwarteten Fehler einer Stufe fest und schließt das
+	 * Dokument. Die Ausgabe wartet auf jedes Dokument, der Fehler wird dort
+	 * gemeldet.
+	 */
+	private void fail(Extraction doc, Throwable e) {
+		if (doc.error == null) {
+			extractor.fail(doc, new IOException(doc.file.getName() + " konnte nicht verarbeitet werden: " + e, e));
+		}
+		discard(doc);
+	}
+
+	/**
+	 * Schließt ein nicht mehr benötigtes Dokument, Fehler dabei werden
+	 * ignoriert
+	 */
+	private static void discard(Extraction doc) {
+		try {
+			doc.close();
+		} catch (IOException e) {
+			//Dokument wird ohnehin verworfen
+		}
+	}
+
+	/**
+	 * Beendet einen Thread einer Stufe. Der letzte Thread der Stufe
+	 * markiert das Ende der Warteschlange für jeden Thread der nächsten
+	 * Stufe.
+	 */
+	private static void finish(AtomicInteger active, BlockingQueue<Extraction> queue, int consumers)
+			throws InterruptedException {
+		if (active.decrementAndGet() == 0) {
+			for (int i = 0; i < consumers; i++) {
+				queue.put(END);
+			}
+		}
+	}
+
+	/**
+	 * Letzte Stufe: schreibt die Ergebnisse in Reihenfolge der Dateien
+	 * @throws IOException
+	 * 			Fehler beim Lesen einer PDF oder beim Schreiben der Ausgabe
+	 */
+	private void write(ResultWriter csv, File[] files, PreviousOutput kept,
+			BlockingQueue<Extraction> matched, Semaphore permits) throws IOException {
+		Map<Integer, Extraction> reorder = new HashMap<Integer, Extraction>();
+		try {
+			for (int seq = 0; seq < files.length; seq++) {
+				if (kept.isKept(files[seq].getName())) {
+					csv.writeRow(kept.take(files[seq].getName()));
+					continue;
+				}
+				Extraction doc = reorder.remove(seq);
+				while (doc == null) {
+					Extraction done = matched.take();
+					if (done.seq == seq) {
+						doc = done;
+					} else {
+						reorder.put(done.seq, done);
+					}
+				}
+				permits.release();
+				if (doc.error != null) {
+					throw doc.error;
+				}
+				extractor.outputValues(csv, doc.file.getName(), doc.values);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Verarbeitung wurde unterbrochen", e);
+		}
+	}
+}
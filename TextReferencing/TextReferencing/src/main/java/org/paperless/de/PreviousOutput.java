@@ -0,0 +1,194 @@
+package org.paperless.de;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.paperless.de.util.CsvReader;
+
+/**
+ * <p>Bisherige CSV-Ausgabe im {@link ApplyTemplate#applyAttributes()
+ * inkrementellen Modus}. Die Zeilen werden nicht im Speicher gehalten,
+ * sondern beim Schreiben der neuen Ausgabe per Merge-Join aus der Datei
+ * gelesen: die bisherige Ausgabe und die Eingabedateien sind beide nach
+ * Dateinamen sortiert. Gehalten werden nur die Dateinamen.</p>
+ * <p>Da die neue Ausgabe in dieselbe Datei geschrieben wird, wird die
+ * bisherige Ausgabe vorher nach {@link #SUFFIX} verschoben und mit
+ * {@link #close()} gelöscht. Zeilen, die die Sortierung verletzen, z.B.
+ * aus dem Überwachungsmodus, werden übergangen, die Dokumente also neu
+ * verarbeitet.</p>
+ *
+ * @author nba
+ */
+class PreviousOutput implements Closeable {
+
+	/**
+	 * Endung der verschobenen bisherigen Ausgabe
+	 */
+	static final String SUFFIX = ".previous";
+
+	/**
+	 * verschobene bisherige Ausgabe oder <code>null</code>, wenn es keine gibt
+	 */
+	private final File file;
+
+	/**
+	 * Anzahl Spalten einer gültigen Zeile
+	 */
+	private final int columns;
+
+	/**
+	 * Dateinamen der gültigen Zeilen in der bisherigen Ausgabe
+	 */
+	private final Set<String> present;
+
+	/**
+	 * Dateinamen, deren Zeilen übernommen werden, s. {@link #keep}
+	 */
+	private final Set<String> kept = new HashSet<String>();
+
+	/**
+	 * Reader für den Merge-Join, wird beim ersten {@link #take} geöffnet
+	 */
+	private CsvReader reader;
+
+	/**
+	 * Dateiname der zuletzt gelesenen gültigen Zeile
+	 */
+	private String last;
+
+	private PreviousOutput(File file, int columns, Set<String> present) {
+		this.file = file;
+		this.columns = columns;
+		this.present = present;
+	}
+
+	/**
+	 * @return bisherige Ausgabe ohne Zeilen, es wird kein Dokument
+	 * 			übernommen
+	 */
+	static PreviousOutput none() {
+		return new PreviousOutput(null, 0, Collections.<String>emptySet());
+	}
+
+	/**
+	 * Liest die Dateinamen der bisherigen Ausgabe und verschiebt sie, damit
+	 * die neue Ausgabe geschrieben werden kann
+	 * @param output
+	 * 			bisherige CSV-Ausgabedatei
+	 * @param header
+	 * 			erwartete Kopfzeile
+	 * @return bisherige Ausgabe oder {@link #none()}, wenn die Datei fehlt
+	 * 			oder die Kopfzeile nicht passt
+	 * @throws IOException
+	 * 			Fehler beim Lesen oder Verschieben der Datei
+	 */
+	static PreviousOutput open(File output, List<String> header) throws IOException {
+		if (!output.isFile()) {
+			return none();
+		}
+		Set<String> present = new HashSet<String>();
+		try (CsvReader reader = new CsvReader(output)) {
+			if (!header.equals(reader.readRow())) {
+				return none();
+			}
+			String last = null;
+			List<String> row;
+			while ((row = reader.readRow()) != null) {
+				if (isNext(row, header.size(), last)) {
+					last = row.get(0);
+					present.add(last);
+				}
+			}
+		}
+		File moved = new File(output.getPath() + SUFFIX);
+		Files.move(output.toPath(), moved.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return new PreviousOutput(moved, header.size(), present);
+	}
+
+	/**
+	 * prüft, ob eine Zeile gültig ist und in der Sortierung nach der
+	 * zuletzt gelesenen gültigen Zeile kommt
+	 */
+	private static boolean isNext(List<String> row, int columns, String last) {
+		return row.size() == columns && (last == null || row.get(0).compareTo(last) > 0);
+	}
+
+	/**
+	 * Übernimmt die Zeile eines Dokuments, sofern die bisherige Ausgabe eine
+	 * enthält. Muss für alle Dokumente vor dem ersten {@link #take}
+	 * aufgerufen werden.
+	 * @param name
+	 * 			Dateiname eines unveränderten Dokuments
+	 * @return <code>true</code>, wenn die Zeile übernommen wird
+	 */
+	boolean keep(String name) {
+		if (present.contains(name)) {
+			kept.add(name);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param name
+	 * 			Dateiname
+	 * @return <code>true</code>, wenn die Zeile des Dokuments übernommen
+	 * 			wird. Darf nach den Aufrufen von {@link #keep} aus mehreren
+	 * 			Threads gerufen werden.
+	 */
+	boolean isKept(String name) {
+		return kept.contains(name);
+	}
+
+	/**
+	 * @return Anzahl der übernommenen Zeilen
+	 */
+	int getKeptCount() {
+		return kept.size();
+	}
+
+	/**
+	 * Liest die Zeile eines übernommenen Dokuments. Die Aufrufe müssen in
+	 * Reihenfolge der Dateinamen erfolgen.
+	 * @param name
+	 * 			Dateiname, für den {@link #isKept} gilt
+	 * @return Zeile inkl. Dateiname
+	 * @throws IOException
+	 * 			Fehler beim Lesen oder die Zeile wurde nicht gefunden
+	 */
+	List<String> take(String name) throws IOException {
+		if (reader == null) {
+			reader = new CsvReader(file);
+			reader.readRow();
+		}
+		List<String> row;
+		while ((row = reader.readRow()) != null) {
+			if (isNext(row, columns, last)) {
+				last = row.get(0);
+				if (last.equals(name)) {
+					return row;
+				}
+			}
+		}
+		throw new IOException("Die Zeile für " + name + " fehlt in " + file.getName());
+	}
+
+	/**
+	 * Schließt und löscht die verschobene bisherige Ausgabe
+	 */
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+		if (file != null) {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package org.paperless.de;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.paperless.de.output.ResultSink;
+import org.paperless.de.output.SinkFactory;
+import org.paperless.de.util.Attribute;
+
+/**
+ * Schreibt die Attributwerte der Dokumente in einem Ausgabeformat, s.
+ * {@link SinkFactory}. Entweder wird eine einzelne Datei geschrieben, bei
+ * mehreren Templates optional mit einer Spalte für das gewählte Template,
+ * oder je Template eine eigene Datei. Bei Ausgabe je Template werden
+ * Dokumente, die zu keinem Template passen, mit ihrem Dateinamen in eine
+ * eigene Datei {@link #UNMATCHED} geschrieben, s. {@link #getTemplateOutput}.
+ * Zugriffe aus mehreren Threads müssen über die Instanz synchronisiert
+ * werden.
+ *
+ * @author nba
+ */
+class ResultWriter implements Closeable {
+
+	/**
+	 * Namensteil der Ausgabedatei für Dokumente ohne passendes Template, darf
+	 * nicht als Templatename verwendet werden
+	 */
+	static final String UNMATCHED = "unmatched";
+
+	/**
+	 * einzelne Ausgabedatei oder <code>null</code> bei Ausgabe je Template
+	 */
+	private final ResultSink single;
+
+	/**
+	 * Spalten der einzelnen Ausgabedatei
+	 */
+	private final List<Attribute> columns;
+
+	/**
+	 * gibt an, ob die einzelne Ausgabedatei eine Spalte für das Template
+	 * enthält
+	 */
+	private final boolean templateColumn;
+
+	/**
+	 * Ausgabedatei je Templatename, nur bei Ausgabe je Template
+	 */
+	private final Map<String, ResultSink> writers = new LinkedHashMap<String, ResultSink>();
+
+	/**
+	 * Attribute je Templatename, nur bei Ausgabe je Template
+	 */
+	private final Map<String, List<Attribute>> templates = new LinkedHashMap<String, List<Attribute>>();
+
+	/**
+	 * Ausgabeformat, nur bei Ausgabe je Template
+	 */
+	private final SinkFactory format;
+
+	/**
+	 * Datei für Dokumente ohne passendes Template, nur bei Ausgabe je
+	 * Template
+	 */
+	private final File unmatchedFile;
+
+	/**
+	 * Ausgabe für Dokumente ohne passendes Template, wird beim ersten
+	 * solchen Dokument geöffnet. Eine Datei aus einem früheren Lauf wird
+	 * vorher gelöscht.
+	 */
+	private ResultSink unmatched;
+
+	/**
+	 * Konstruktor für eine einzelne Ausgabedatei, schreibt die Kopfzeile
+	 * @param output
+	 * 			Ausgabedatei
+	 * @param format
+	 * 			Ausgabeformat
+	 * @param columns
+	 * 			Attribute in Spaltenreihenfolge
+	 * @param templateColumn
+	 * 			<code>true</code>, wenn nach dem Dateinamen eine Spalte mit
+	 * 			dem gewählten Template folgt
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	ResultWriter(File output, SinkFactory format, List<Attribute> columns, boolean templateColumn) throws IOException {
+		this.single = format.create(output, getHeader(columns, templateColumn));
+		this.columns = columns;
+		this.templateColumn = templateColumn;
+		this.format = null;
+		this.unmatchedFile = null;
+	}
+
+	/**
+	 * Konstruktor für eine Ausgabedatei je Template, schreibt die
+	 * Kopfzeilen. Die Dateinamen werden aus der Ausgabedatei abgeleitet, s.
+	 * {@link #getTemplateOutput}.
+	 * @param output
+	 * 			Ausgabedatei
+	 * @param format
+	 * 			Ausgabeformat
+	 * @param names
+	 * 			Templatenamen
+	 * @param attributes
+	 * 			Attribute je Template in derselben Reihenfolge
+	 * @throws IOException
+	 * 			Fehler beim Schreiben oder ein Template heißt {@link #UNMATCHED}
+	 */
+	ResultWriter(File output, SinkFactory format, List<String> names, List<List<Attribute>> attributes) throws IOException {
+		this.single = null;
+		this.columns = null;
+		this.templateColumn = false;
+		this.format = format;
+		this.unmatchedFile = getTemplateOutput(output, UNMATCHED, format.getExtension());
+		if (names.contains(UNMATCHED)) {
+			throw new IOException("Der Templatename " + UNMATCHED + " ist für Dokumente ohne passendes Template reserviert");
+		}
+		Files.deleteIfExists(unmatchedFile.toPath());
+		try {
+			for (int i = 0; i < names.size(); i++) {
+				ResultSink sink = format.create(getTemplateOutput(output, names.get(i), format.getExtension()),
+						getHeader(attributes.get(i), false));
+				writers.put(names.get(i), sink);
+				templates.put(names.get(i), attributes.get(i));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Erstellt die Kopfzeile
+	 * @param columns
+	 * 			Attribute in Spaltenreihenfolge
+	 * @param templateColumn
+	 * 			gibt an, ob eine Spalte für das Template enthalten ist
+	 * @return Spaltennamen
+	 */
+	static List<String> getHeader(List<Attribute> columns, boolean templateColumn) {
+		List<String> ret = new ArrayList<String>(columns.size() + 2);
+		ret.add("Datei");
+		if (templateColumn) {
+			ret.add(ApplyTemplate.TEMPLATE_COLUMN);
+		}
+		for (Attribute attr : columns) {
+			ret.add(attr.name);
+		}
+		return ret;
+	}
+
+	/**
+	 * Leitet die Ausgabedatei eines Templates ab, z.B.
+	 * <code>result-lieferantA.csv</code> für <code>result.csv</code> und das
+	 * Template <code>lieferantA</code>
+	 * @param output
+	 * 			Ausgabedatei
+	 * @param template
+	 * 			Templatename
+	 * @param extension
+	 * 			Dateiendung, falls die Ausgabedatei keine hat
+	 * @return Ausgabedatei des Templates
+	 */
+	static File getTemplateOutput(File output, String template, String extension) {
+		String name = output.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String ext = dot > 0 ? name.substring(dot) : extension;
+		return new File(output.getAbsoluteFile().getParentFile(), base + '-' + template + ext);
+	}
+
+	/**
+	 * Schreibt die Attributwerte eines Dokuments
+	 * @param file
+	 * 			Dateiname des Dokuments
+	 * @param values
+	 * 			Mapping Attributname auf Attributwert, bei mehreren Templates
+	 * 			zusätzlich {@link ApplyTemplate#TEMPLATE_COLUMN} auf den
+	 * 			Templatenamen. Passt bei Ausgabe je Template kein Template,
+	 * 			wird nur der Dateiname nach {@link #UNMATCHED} geschrieben.
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	void writeValues(String file, Map<String, String> values) throws IOException {
+		ResultSink sink = single;
+		List<Attribute> attributes = columns;
+		if (sink == null) {
+			String template = values.get(ApplyTemplate.TEMPLATE_COLUMN);
+			sink = writers.get(template);
+			attributes = templates.get(template);
+			if (sink == null) {
+				if (unmatched == null) {
+					unmatched = format.create(unmatchedFile, Collections.singletonList("Datei"));
+				}
+				unmatched.writeRecord(Collections.singletonList(file));
+				return;
+			}
+		}
+
+		List<String> row = new ArrayList<String>(attributes.size() + 2);
+		row.add(file);
+		if (templateColumn) {
+			row.add(values.get(ApplyTemplate.TEMPLATE_COLUMN));
+		}
+		for (Attribute attr : attributes) {
+			row.add(values.get(attr.name));
+		}
+		sink.writeRecord(row);
+	}
+
+	/**
+	 * Übernimmt eine fertige Zeile in die einzelne Ausgabedatei
+	 * @param row
+	 * 			Zeile inkl. Dateiname
+	 * @throws IOException
+	 * 			Fehler beim Schreiben oder Ausgabe je Template
+	 */
+	void writeRow(List<String> row) throws IOException {
+		if (single == null) {
+			throw new IOException("Bei Ausgabe je Template können keine fertigen Zeilen übernommen werden");
+		}
+		single.writeRecord(row);
+	}
+
+	/**
+	 * Leert die Puffer aller Ausgabedateien
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	void flush() throws IOException {
+		if (single != null) {
+			single.flush();
+		}
+		for (ResultSink sink : writers.values()) {
+			sink.flush();
+		}
+		if (unmatched != null) {
+			unmatched.flush();
+		}
+	}
+
+	/**
+	 * Schließt alle Ausgabedateien
+	 */
+	public void close() throws IOException {
+		IOException error = null;
+		List<ResultSink> all = new ArrayList<ResultSink>(writers.values());
+		if (single != null) {
+			all.add(single);
+		}
+		if (unmatched != null) {
+			all.add(unmatched);
+		}
+		for (ResultSink sink : all) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+}
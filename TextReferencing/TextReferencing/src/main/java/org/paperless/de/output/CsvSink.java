@@ -0,0 +1,73 @@
+package org.paperless.de.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.paperless.de.util.CsvReader;
+import org.paperless.de.util.CsvWriter;
+
+/**
+ * Ausgabe als CSV mit Kopfzeile, s. {@link CsvWriter}. Geschrieben wird in
+ * der Standardkodierung der Plattform, damit {@link CsvReader} die Ausgabe
+ * wieder lesen kann.
+ *
+ * @author nba
+ */
+public class CsvSink implements ResultSink {
+
+	/**
+	 * Factory für {@link java.util.ServiceLoader}
+	 */
+	public static class Factory implements SinkFactory {
+
+		public String getFormat() {
+			return "csv";
+		}
+
+		public String getExtension() {
+			return ".csv";
+		}
+
+		public ResultSink create(File file, List<String> columns) throws IOException {
+			return new CsvSink(file, columns);
+		}
+	}
+
+	/**
+	 * darunterliegender CSV-Writer
+	 */
+	private final CsvWriter csv;
+
+	/**
+	 * Konstruktor, öffnet die Datei und schreibt die Kopfzeile
+	 * @param file
+	 * 			Ausgabedatei
+	 * @param columns
+	 * 			Spaltennamen
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public CsvSink(File file, List<String> columns) throws IOException {
+		csv = new CsvWriter(Sinks.openWriter(file, Charset.defaultCharset()));
+		try {
+			csv.writeRow(columns);
+		} catch (IOException e) {
+			csv.close();
+			throw e;
+		}
+	}
+
+	public void writeRecord(List<String> values) throws IOException {
+		csv.writeRow(values);
+	}
+
+	public void flush() throws IOException {
+		csv.flush();
+	}
+
+	public void close() throws IOException {
+		csv.close();
+	}
+}
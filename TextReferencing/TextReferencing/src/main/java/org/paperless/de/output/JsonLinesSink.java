@@ -0,0 +1,111 @@
+package org.paperless.de.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.paperless.de.util.Json;
+
+/**
+ * Ausgabe als JSON Lines in UTF-8: je Datensatz eine Zeile mit einem
+ * Objekt, dessen Schlüssel die Spaltennamen sind. Fehlende Werte werden als
+ * <code>null</code> geschrieben. Die Datei hat keine Kopfzeile und ist nach
+ * jedem Datensatz gültig, kann also während der Verarbeitung gelesen
+ * werden.
+ *
+ * @author nba
+ */
+public class JsonLinesSink implements ResultSink {
+
+	/**
+	 * Factory für {@link java.util.ServiceLoader}
+	 */
+	public static class Factory implements SinkFactory {
+
+		public String getFormat() {
+			return "jsonl";
+		}
+
+		public String getExtension() {
+			return ".jsonl";
+		}
+
+		public ResultSink create(File file, List<String> columns) throws IOException {
+			return new JsonLinesSink(file, columns);
+		}
+	}
+
+	/**
+	 * gepufferte Ausgabe
+	 */
+	private final Writer out;
+
+	/**
+	 * Spaltennamen als JSON-Strings inkl. Doppelpunkt, werden für jeden
+	 * Datensatz wiederverwendet
+	 */
+	private final String[] keys;
+
+	/**
+	 * Puffer für eine Zeile, wird für jeden Datensatz wiederverwendet
+	 */
+	private final StringBuilder line = new StringBuilder(256);
+
+	/**
+	 * gibt an, ob die Ausgabe bereits geschlossen wurde
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Konstruktor, öffnet die Datei
+	 * @param file
+	 * 			Ausgabedatei
+	 * @param columns
+	 * 			Spaltennamen
+	 * @throws IOException
+	 * 			Fehler beim Öffnen
+	 */
+	public JsonLinesSink(File file, List<String> columns) throws IOException {
+		keys = new String[columns.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = Json.quote(columns.get(i)) + ':';
+		}
+		out = Sinks.openWriter(file, StandardCharsets.UTF_8);
+	}
+
+	public void writeRecord(List<String> values) throws IOException {
+		if (closed) {
+			throw new IOException("This JSON-Lines-Sink has already been closed");
+		}
+
+		line.setLength(0);
+		line.append('{');
+		for (int i = 0; i < keys.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			line.append(keys[i]);
+			String value = i < values.size() ? values.get(i) : null;
+			if (value == null) {
+				line.append("null");
+			} else {
+				Json.appendQuoted(line, value);
+			}
+		}
+		line.append("}\n");
+		out.append(line);
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.paperless.de.output;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Ziel für die Attributwerte der Dokumente. Die Spalten werden beim
+ * Erzeugen über die {@link SinkFactory} festgelegt, danach wird je Dokument
+ * ein Datensatz geschrieben, sobald er vorliegt. Nutzung:
+ * <ol>
+ * <li>Erzeugen über {@link SinkFactory#create}.</li>
+ * <li>für jedes Dokument wird {@link #writeRecord} gerufen.</li>
+ * <li>am Ende der Ausgabe muss {@link #close()} aufgerufen werden, damit
+ * das Format abgeschlossen und die Datei geschlossen wird.</li>
+ * </ol>
+ * Implementierungen müssen nicht threadsicher sein.
+ *
+ * @author nba
+ */
+public interface ResultSink extends Closeable, Flushable {
+
+	/**
+	 * Schreibt einen Datensatz
+	 * @param values
+	 * 			Werte in Reihenfolge der Spalten, einzelne Werte dürfen
+	 * 			<code>null</code> sein
+	 * @throws IOException
+	 * 			Fehler beim Schreiben oder die Ausgabe wurde bereits
+	 * 			geschlossen
+	 */
+	void writeRecord(List<String> values) throws IOException;
+
+	/**
+	 * Leert die Puffer in die Datei, z.B. damit nachfolgende Prozesse die
+	 * bisherigen Datensätze lesen können
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	void flush() throws IOException;
+}
@@ -0,0 +1,39 @@
+package org.paperless.de.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Erzeugt {@link ResultSink}s eines Ausgabeformats. Implementierungen
+ * werden über {@link java.util.ServiceLoader} gefunden und müssen daher
+ * öffentlich sein, einen öffentlichen Standardkonstruktor haben und in
+ * <code>META-INF/services/org.paperless.de.output.SinkFactory</code>
+ * eingetragen sein, s. {@link Sinks}.
+ *
+ * @author nba
+ */
+public interface SinkFactory {
+
+	/**
+	 * @return Name des Formats für die Kommandozeile, z.B. <code>csv</code>
+	 */
+	String getFormat();
+
+	/**
+	 * @return übliche Dateiendung inkl. Punkt, z.B. <code>.csv</code>
+	 */
+	String getExtension();
+
+	/**
+	 * Öffnet die Ausgabedatei. Eine existierende Datei wird überschrieben.
+	 * @param file
+	 * 			Ausgabedatei
+	 * @param columns
+	 * 			Spaltennamen in der Reihenfolge der Werte jedes Datensatzes
+	 * @return geöffnete Ausgabe
+	 * @throws IOException
+	 * 			Fehler beim Öffnen oder Schreiben des Dateibeginns
+	 */
+	ResultSink create(File file, List<String> columns) throws IOException;
+}
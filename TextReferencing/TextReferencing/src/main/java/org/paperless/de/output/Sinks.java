@@ -0,0 +1,93 @@
+package org.paperless.de.output;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Zugriff auf die verfügbaren Ausgabeformate, s. {@link SinkFactory}, und
+ * gemeinsame Hilfsmethoden der Implementierungen
+ *
+ * @author nba
+ */
+public class Sinks {
+
+	/**
+	 * Standardformat
+	 */
+	public static final String DEFAULT_FORMAT = "csv";
+
+	/**
+	 * Puffergröße der Ausgabe in Zeichen. Die Datensätze werden gesammelt
+	 * und in großen Blöcken in den Dateikanal geschrieben.
+	 */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * keine Instanzen
+	 */
+	private Sinks() {
+	}
+
+	/**
+	 * Sucht das Ausgabeformat über {@link ServiceLoader}
+	 * @param format
+	 * 			Name des Formats, s. {@link SinkFactory#getFormat()}
+	 * @return Factory des Formats
+	 * @throws IllegalArgumentException
+	 * 			unbekanntes Format
+	 */
+	public static SinkFactory forFormat(String format) throws IllegalArgumentException {
+		for (SinkFactory factory : ServiceLoader.load(SinkFactory.class)) {
+			if (factory.getFormat().equals(format)) {
+				return factory;
+			}
+		}
+		throw new IllegalArgumentException("Unbekanntes Ausgabeformat " + format + ", erlaubt sind " + getFormats() + '.');
+	}
+
+	/**
+	 * @return Namen aller verfügbaren Formate
+	 */
+	public static List<String> getFormats() {
+		List<String> ret = new ArrayList<String>();
+		for (SinkFactory factory : ServiceLoader.load(SinkFactory.class)) {
+			ret.add(factory.getFormat());
+		}
+		return ret;
+	}
+
+	/**
+	 * Öffnet eine Datei zum Schreiben über einen {@link FileChannel} mit
+	 * großem Puffer. Eine existierende Datei wird überschrieben. Nicht
+	 * kodierbare Zeichen werden wie bei {@link java.io.FileWriter} ersetzt,
+	 * statt die Ausgabe abzubrechen. Zeichen, die kodierbar, aber im Format
+	 * nicht erlaubt sind, muss die Ausgabe selbst ersetzen, s.
+	 * {@link XmlSink#clean(String)}.
+	 * @param file
+	 * 			Ausgabedatei
+	 * @param charset
+	 * 			Zeichenkodierung
+	 * @return gepufferter Writer, schließt mit dem Writer auch den Kanal
+	 * @throws IOException
+	 * 			Fehler beim Öffnen der Datei
+	 */
+	public static Writer openWriter(File file, Charset charset) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		CharsetEncoder encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return new BufferedWriter(Channels.newWriter(channel, encoder, -1), BUFFER_SIZE);
+	}
+}
@@ -0,0 +1,192 @@
+package org.paperless.de.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streamende Ausgabe als XML in UTF-8. Jeder Datensatz wird sofort als
+ * eigene Zeile geschrieben:
+ * <pre>
+ * &lt;results&gt;
+ * &lt;document&gt;&lt;value name="Datei"&gt;a.pdf&lt;/value&gt;...&lt;/document&gt;
+ * &lt;/results&gt;
+ * </pre>
+ * Fehlende Werte werden als leeres Element geschrieben. Zeichen, die in
+ * XML 1.0 nicht erlaubt sind, z.B. Steuerzeichen aus nicht zugeordneten
+ * Glyphen oder einzelne Surrogate, werden durch {@link #REPLACEMENT}
+ * ersetzt, s. {@link #clean(String)}. Das Wurzelelement wird erst mit
+ * {@link #close()} beendet.
+ *
+ * @author nba
+ */
+public class XmlSink implements ResultSink {
+
+	/**
+	 * Factory für {@link java.util.ServiceLoader}
+	 */
+	public static class Factory implements SinkFactory {
+
+		public String getFormat() {
+			return "xml";
+		}
+
+		public String getExtension() {
+			return ".xml";
+		}
+
+		public ResultSink create(File file, List<String> columns) throws IOException {
+			return new XmlSink(file, columns);
+		}
+	}
+
+	/**
+	 * Ersatz für in XML nicht erlaubte Zeichen
+	 */
+	static final char REPLACEMENT = '\uFFFD';
+
+	/**
+	 * gepufferte Ausgabe, muss gespeichert werden, da der XML-Writer sie
+	 * nicht schließt
+	 */
+	private final Writer out;
+
+	/**
+	 * benutzter XML-Writer
+	 */
+	private final XMLStreamWriter xml;
+
+	/**
+	 * Spaltennamen
+	 */
+	private final List<String> columns;
+
+	/**
+	 * gibt an, ob die Ausgabe bereits geschlossen wurde
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Konstruktor, öffnet die Datei und beginnt den XML-Baum
+	 * @param file
+	 * 			Ausgabedatei
+	 * @param columns
+	 * 			Spaltennamen
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public XmlSink(File file, List<String> columns) throws IOException {
+		this.columns = columns;
+		out = Sinks.openWriter(file, StandardCharsets.UTF_8);
+		try {
+			xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeCharacters("\n");
+			xml.writeStartElement("results");
+			xml.writeCharacters("\n");
+		} catch (XMLStreamException e) {
+			out.close();
+			throw new IOException(e);
+		}
+	}
+
+	public void writeRecord(List<String> values) throws IOException {
+		if (closed) {
+			throw new IOException("This XML-Sink has already been closed");
+		}
+
+		try {
+			xml.writeStartElement("document");
+			for (int i = 0; i < columns.size(); i++) {
+				String value = i < values.size() ? values.get(i) : null;
+				if (value == null) {
+					xml.writeEmptyElement("value");
+					xml.writeAttribute("name", clean(columns.get(i)));
+				} else {
+					xml.writeStartElement("value");
+					xml.writeAttribute("name", clean(columns.get(i)));
+					xml.writeCharacters(clean(value));
+					xml.writeEndElement();
+				}
+			}
+			xml.writeEndElement();
+			xml.writeCharacters("\n");
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Ersetzt Zeichen, die in XML 1.0 nicht erlaubt sind, durch
+	 * {@link #REPLACEMENT}. Der StAX-Writer schreibt sie sonst unverändert,
+	 * und die ganze Datei wäre nicht mehr lesbar. Erlaubt sind Tabulator,
+	 * Zeilenumbrüche, U+0020 bis U+D7FF, U+E000 bis U+FFFD und vollständige
+	 * Surrogatpaare.
+	 * @param value
+	 * 			Zeichenkette
+	 * @return die Zeichenkette selbst, wenn alle Zeichen erlaubt sind, sonst
+	 * 			eine bereinigte Kopie
+	 */
+	static String clean(String value) {
+		StringBuilder ret = null;
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			boolean legal;
+			if (Character.isHighSurrogate(ch)) {
+				legal = i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1));
+				if (legal) {
+					if (ret != null) {
+						ret.append(ch);
+					}
+					ch = value.charAt(++i);
+				}
+			} else if (Character.isLowSurrogate(ch)) {
+				legal = false;
+			} else {
+				legal = ch >= 0x20 ? ch <= 0xFFFD : ch == '\t' || ch == '\n' || ch == '\r';
+			}
+			if (!legal && ret == null) {
+				ret = new StringBuilder(value.length());
+				ret.append(value, 0, i);
+			}
+			if (ret != null) {
+				ret.append(legal ? ch : REPLACEMENT);
+			}
+		}
+		return ret == null ? value : ret.toString();
+	}
+
+	public void flush() throws IOException {
+		try {
+			xml.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Beendet den XML-Baum und schließt die Datei
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package org.paperless.de.parser;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.paperless.de.util.AtomicFiles;
+import org.paperless.de.util.Hashes;
+
+/**
+ * <p>Persistenter Zwischenspeicher für die extrahierten Texte von
+ * PDF-Dokumenten. Der Schlüssel eines Dokuments setzt sich aus der Prüfsumme
+ * des Dateiinhalts und den Extraktionseinstellungen zusammen, eine geänderte
+ * Datei oder geänderte Einstellungen führen also automatisch zu einem neuen
+ * Eintrag.</p>
+ * <p>Jeder Eintrag ist eine Binärdatei im Cache-Verzeichnis:</p>
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     Anzahl Seiten des Dokuments
+ * int     Anzahl Texte
+ * je Text: int Seite, float firstX, firstY, lastX, lastY,
+ *          int Länge, byte[] Text in UTF-8
+ * </pre>
+ * <p>Einträge werden über eine temporäre Datei geschrieben und dann
+ * umbenannt, der Cache kann also aus mehreren Threads genutzt werden.</p>
+ *
+ * @author nba
+ */
+public class LayoutCache {
+
+	/**
+	 * Kennung am Dateianfang
+	 */
+	private static final int MAGIC = 0x504C4331;
+
+	/**
+	 * Version des Dateiformats
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Dateiendung der Einträge
+	 */
+	private static final String SUFFIX = ".layout";
+
+	/**
+	 * Puffergröße beim Lesen und Schreiben
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Gespeichertes Layout eines Dokuments
+	 */
+	public static class Entry {
+
+		/**
+		 * Anzahl Seiten des Dokuments
+		 */
+		private final int pages;
+
+		/**
+		 * extrahierte Texte
+		 */
+		private final List<PdfString> texts;
+
+		/**
+		 * Konstruktor
+		 * @param pages
+		 * 			Anzahl Seiten des Dokuments
+		 * @param texts
+		 * 			extrahierte Texte
+		 */
+		public Entry(int pages, List<PdfString> texts) {
+			this.pages = pages;
+			this.texts = texts;
+		}
+
+		/**
+		 * @return Anzahl Seiten des Dokuments, auch wenn nur Texte
+		 * 			einzelner Seiten gespeichert sind
+		 */
+		public int getPages() {
+			return pages;
+		}
+
+		/**
+		 * @return extrahierte Texte
+		 */
+		public List<PdfString> getTexts() {
+			return texts;
+		}
+	}
+
+	/**
+	 * Cache-Verzeichnis
+	 */
+	private final File dir;
+
+	/**
+	 * Beschreibung der Extraktionseinstellungen, geht in jeden Schlüssel ein
+	 */
+	private final String settings;
+
+	/**
+	 * Konstruktor, legt das Cache-Verzeichnis bei Bedarf an
+	 * @param dir
+	 * 			Cache-Verzeichnis
+	 * @param settings
+	 * 			Beschreibung aller Einstellungen, die das extrahierte Layout
+	 * 			beeinflussen
+	 * @throws IOException
+	 * 			das Verzeichnis konnte nicht angelegt werden
+	 */
+	public LayoutCache(File dir, String settings) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cache-Verzeichnis " + dir.getAbsolutePath() + " konnte nicht angelegt werden");
+		}
+		this.dir = dir;
+		this.settings = settings;
+	}
+
+	/**
+	 * Berechnet den Schlüssel eines Dokuments
+	 * @param pdf
+	 * 			PDF-Datei
+	 * @return Schlüssel aus Dateiinhalt und Einstellungen
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 */
+	public String getKey(File pdf) throws IOException {
+		return Hashes.sha256(settings + '\n' + Hashes.sha256(pdf));
+	}
+
+	/**
+	 * Liest das gespeicherte Layout eines Dokuments
+	 * @param key
+	 * 			Schlüssel, s. {@link #getKey}
+	 * @return Layout des Dokuments oder <code>null</code>, wenn kein gültiger
+	 * 			Eintrag existiert
+	 */
+	public Entry get(String key) {
+		File file = new File(dir, key + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			int pages = in.readInt();
+			int count = in.readInt();
+			List<PdfString> ret = new ArrayList<PdfString>(count);
+			for (int i = 0; i < count; i++) {
+				int page = in.readInt();
+				float firstX = in.readFloat();
+				float firstY = in.readFloat();
+				float lastX = in.readFloat();
+				float lastY = in.readFloat();
+				byte[] text = new byte[in.readInt()];
+				in.readFully(text);
+				ret.add(new PdfString(new String(text, StandardCharsets.UTF_8), page, firstX, firstY, lastX, lastY));
+			}
+			return new Entry(pages, ret);
+		} catch (EOFException e) {
+			//unvollständiger Eintrag, wird neu erstellt
+			return null;
+		} catch (IOException e) {
+			System.out.println("[WARN] Cache-Eintrag " + file.getName() + " konnte nicht gelesen werden: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Speichert das Layout eines Dokuments über eine temporäre Datei, s.
+	 * {@link AtomicFiles}
+	 * @param key
+	 * 			Schlüssel, s. {@link #getKey}
+	 * @param pages
+	 * 			Anzahl Seiten des Dokuments
+	 * @param texts
+	 * 			Texte des Dokuments
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public void put(String key, final int pages, final List<PdfString> texts) throws IOException {
+		AtomicFiles.write(new File(dir, key + SUFFIX), new AtomicFiles.Content() {
+
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(pages);
+				out.writeInt(texts.size());
+				for (PdfString text : texts) {
+					out.writeInt(text.getPageNum());
+					out.writeFloat(text.getFirstX());
+					out.writeFloat(text.getFirstY());
+					out.writeFloat(text.getLastX());
+					out.writeFloat(text.getLastY());
+					byte[] bytes = text.getText().getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+		});
+	}
+}
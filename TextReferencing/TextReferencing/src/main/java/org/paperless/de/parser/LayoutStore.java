@@ -0,0 +1,337 @@
+package org.paperless.de.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.paperless.de.util.Attribute;
+
+/**
+ * <p>Kompakte Speicherstruktur für das Layout eines Dokuments. Statt eines
+ * Objekts pro Text werden die Koordinatenrahmen in parallelen
+ * primitiven Arrays gehalten, die Texte liegen hintereinander in einem
+ * gemeinsamen Zeichenpuffer und werden über Offsets adressiert.</p>
+ * <p>Die Einträge sind nach Seite und innerhalb einer Seite nach
+ * {@link PdfString#getFirstY() Y-Start} sortiert, sodass die Abgleichmethoden
+ * per Binärsuche auf das Toleranzfenster springen und dieses in einer engen
+ * Schleife durchlaufen können. Die Ergebnisse entsprechen denen von
+ * {@link TextStripper#getAttrValues} und {@link TextStripper#compare}.</p>
+ * <p>Instanzen sind nach der Erstellung unveränderlich.</p>
+ *
+ * @author nba
+ */
+public class LayoutStore {
+
+	/**
+	 * Spielraum für die Binärsuche, damit Rundungsfehler bei der Berechnung
+	 * der Fenstergrenzen keine Treffer verhindern. Die exakte Prüfung erfolgt
+	 * innerhalb des Fensters.
+	 */
+	private static final float EPSILON = 0.001f;
+
+	/**
+	 * aufsteigend sortierte Seitenzahlen, für die Einträge existieren
+	 */
+	private final int[] pageNums;
+
+	/**
+	 * Beginn der Einträge je Seite, Länge ist Anzahl Seiten + 1
+	 */
+	private final int[] pageOffsets;
+
+	/**
+	 * Koordinatenrahmen je Eintrag
+	 */
+	private final float[] firstX, firstY, lastX, lastY;
+
+	/**
+	 * ursprüngliche Position des Eintrags in der Textliste des Dokuments
+	 */
+	private final int[] docIndex;
+
+	/**
+	 * Eintrag zu einer Position in der Textliste, Umkehrung von {@link #docIndex}
+	 */
+	private final int[] entryByDocIndex;
+
+	/**
+	 * Beginn der Texte in {@link #chars}, Länge ist Anzahl Einträge + 1
+	 */
+	private final int[] textOffsets;
+
+	/**
+	 * gemeinsamer Zeichenpuffer aller Texte
+	 */
+	private final char[] chars;
+
+	/**
+	 * Konstruktor, überführt eine Textliste in die kompakte Darstellung
+	 * @param texts
+	 * 			Texte eines Dokuments, z.B. aus {@link TextStripper#getTexts()}
+	 */
+	public LayoutStore(final List<PdfString> texts) {
+		int n = texts.size();
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				PdfString t1 = texts.get(i1);
+				PdfString t2 = texts.get(i2);
+				if (t1.getPageNum() != t2.getPageNum()) {
+					return t1.getPageNum() < t2.getPageNum() ? -1 : 1;
+				}
+				int cmp = Float.compare(t1.getFirstY(), t2.getFirstY());
+				return cmp != 0 ? cmp : i1.compareTo(i2);
+			}
+		});
+
+		firstX = new float[n];
+		firstY = new float[n];
+		lastX = new float[n];
+		lastY = new float[n];
+		docIndex = new int[n];
+		entryByDocIndex = new int[n];
+		textOffsets = new int[n + 1];
+
+		int length = 0;
+		for (PdfString text : texts) {
+			length += text.getText().length();
+		}
+		chars = new char[length];
+
+		List<Integer> pages = new ArrayList<Integer>();
+		List<Integer> offsets = new ArrayList<Integer>();
+		int pos = 0;
+		for (int i = 0; i < n; i++) {
+			PdfString text = texts.get(order[i]);
+			if (pages.isEmpty() || pages.get(pages.size() - 1) != text.getPageNum()) {
+				pages.add(text.getPageNum());
+				offsets.add(i);
+			}
+			firstX[i] = text.getFirstX();
+			firstY[i] = text.getFirstY();
+			lastX[i] = text.getLastX();
+			lastY[i] = text.getLastY();
+			docIndex[i] = order[i];
+			entryByDocIndex[order[i]] = i;
+
+			String s = text.getText();
+			s.getChars(0, s.length(), chars, pos);
+			textOffsets[i] = pos;
+			pos += s.length();
+		}
+		textOffsets[n] = pos;
+
+		pageNums = new int[pages.size()];
+		pageOffsets = new int[pages.size() + 1];
+		for (int i = 0; i < pageNums.length; i++) {
+			pageNums[i] = pages.get(i);
+			pageOffsets[i] = offsets.get(i);
+		}
+		pageOffsets[pageNums.length] = n;
+	}
+
+	/**
+	 * @return Anzahl der gespeicherten Texte
+	 */
+	public int size() {
+		return docIndex.length;
+	}
+
+	/**
+	 * Erstellt einen Text aus der kompakten Darstellung
+	 * @param index
+	 * 			Position des Texts in der ursprünglichen Textliste
+	 * @return neu erstelltes Textobjekt ohne Glyphenliste
+	 */
+	public PdfString get(int index) {
+		int entry = entryByDocIndex[index];
+		return new PdfString(getText(entry), pageOf(entry), firstX[entry], firstY[entry], lastX[entry], lastY[entry]);
+	}
+
+	/**
+	 * Entsprechung zu {@link TextStripper#getAttrValues}: gibt eine Map der
+	 * Attributwerte zurück, nicht gefundene Attribute erhalten den Wert "N/A".
+	 * Es werden nur Texte auf der Seite des Attributs berücksichtigt.
+	 *
+	 * @param attributes
+	 * 			Liste der Attribute, die mit dem Dokument abgeglichen werden
+	 * 			sollen.
+	 * @param xTol
+	 * 			Toleranz beim Abgleich in X-Richtung
+	 * @param yTol
+	 * 			Toleranz beim Abgleich in Y-Richtung
+	 * @return  <p>Mapping der Attributwerte</p>
+	 * 			KEY: Attributname aus der Attributliste<br>
+	 * 			WERT: Attributwert aus dem Dokument oder "N/A"
+	 */
+	public Map<String, String> getAttrValues(List<Attribute> attributes, float xTol, float yTol) {
+		HashMap<String, String> ret = new HashMap<String, String>();
+		for (Attribute attr : attributes) {
+			int best = -1;
+			if (attr.page < 1) {
+				for (int slot = 0; slot < pageNums.length; slot++) {
+					best = findFirst(slot, attr.xStart, attr.yStart, xTol, yTol, best);
+				}
+			} else {
+				int slot = Arrays.binarySearch(pageNums, attr.page);
+				if (slot >= 0) {
+					best = findFirst(slot, attr.xStart, attr.yStart, xTol, yTol, best);
+				}
+			}
+			ret.put(attr.name, best < 0 ? "N/A" : getText(best));
+		}
+		return ret;
+	}
+
+	/**
+	 * Entsprechung zu {@link TextStripper#compare}: gibt die eigenen Texte
+	 * zurück, deren nächstgelegenes Gegenstück auf derselben Seite des
+	 * anderen Layouts einen anderen Inhalt hat.
+	 *
+	 * @param other
+	 * 			anderes Layout zum Vergleich
+	 * @param xTol
+	 * 			Toleranz beim Vergleich in X-Richtung
+	 * @param yTol
+	 * 			Toleranz beim Vergleich in Y-Richtung
+	 * @return Liste der unterschiedlichen Texte in Dokumentreihenfolge
+	 */
+	public List<PdfString> compare(LayoutStore other, float xTol, float yTol) {
+		List<PdfString> ret = new ArrayList<PdfString>();
+		for (int index = 0; index < docIndex.length; index++) {
+			int entry = entryByDocIndex[index];
+			int match = other.findNearest(pageOf(entry), firstX[entry], firstY[entry], xTol, yTol);
+			if (match >= 0 && !textEquals(entry, other, match)) {
+				ret.add(get(index));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Sucht auf einer Seite den Eintrag, dessen Startkoordinaten einer
+	 * Position am nächsten liegen, innerhalb der Toleranz.
+	 *
+	 * @param page
+	 * 			Seitenzahl
+	 * @param x
+	 * 			X-Koordinate
+	 * @param y
+	 * 			Y-Koordinate
+	 * @param xTol
+	 * 			Toleranz in X-Richtung
+	 * @param yTol
+	 * 			Toleranz in Y-Richtung
+	 * @return Eintrag oder -1, wenn kein Text innerhalb der Toleranz liegt
+	 */
+	int findNearest(int page, float x, float y, float xTol, float yTol) {
+		int slot = Arrays.binarySearch(pageNums, page);
+		if (slot < 0) {
+			return -1;
+		}
+		int best = -1;
+		float bestDist = Float.MAX_VALUE;
+		int end = pageOffsets[slot + 1];
+		float yMax = y + yTol + EPSILON;
+		for (int i = lowerBound(pageOffsets[slot], end, y - yTol - EPSILON); i < end && firstY[i] <= yMax; i++) {
+			float dx = x - firstX[i];
+			float dy = y - firstY[i];
+			if (Math.abs(dx) <= xTol && Math.abs(dy) <= yTol) {
+				float dist = dx * dx + dy * dy;
+				if (dist < bestDist || (dist == bestDist && docIndex[i] < docIndex[best])) {
+					best = i;
+					bestDist = dist;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * vergleicht den Text eines Eintrags mit einem String, ohne den Text
+	 * zu erzeugen
+	 */
+	boolean textEquals(int entry, String text) {
+		int start = textOffsets[entry];
+		if (text.length() != textOffsets[entry + 1] - start) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (chars[start + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sucht im Toleranzfenster einer Seite den Eintrag mit der kleinsten
+	 * ursprünglichen Position.
+	 */
+	private int findFirst(int slot, float x, float y, float xTol, float yTol, int best) {
+		int end = pageOffsets[slot + 1];
+		float yMax = y + yTol + EPSILON;
+		for (int i = lowerBound(pageOffsets[slot], end, y - yTol - EPSILON); i < end && firstY[i] <= yMax; i++) {
+			if (Math.abs(x - firstX[i]) <= xTol && Math.abs(y - firstY[i]) <= yTol
+					&& (best < 0 || docIndex[i] < docIndex[best])) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * vergleicht zwei Texte direkt in den Zeichenpuffern
+	 */
+	private boolean textEquals(int entry, LayoutStore other, int otherEntry) {
+		int start = textOffsets[entry];
+		int length = textOffsets[entry + 1] - start;
+		int otherStart = other.textOffsets[otherEntry];
+		if (length != other.textOffsets[otherEntry + 1] - otherStart) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chars[start + i] != other.chars[otherStart + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return erster Eintrag im Bereich mit Y-Start größer oder gleich y
+	 */
+	private int lowerBound(int from, int to, float y) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (firstY[mid] < y) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * @return Seitenzahl eines Eintrags
+	 */
+	private int pageOf(int entry) {
+		//jede Seite hat mindestens einen Eintrag, die Offsets sind also streng monoton
+		int slot = Arrays.binarySearch(pageOffsets, 0, pageNums.length, entry);
+		return pageNums[slot < 0 ? -slot - 2 : slot];
+	}
+
+	/**
+	 * @return Text eines Eintrags
+	 */
+	private String getText(int entry) {
+		return new String(chars, textOffsets[entry], textOffsets[entry + 1] - textOffsets[entry]);
+	}
+}
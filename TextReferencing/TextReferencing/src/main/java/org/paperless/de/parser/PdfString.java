@@ -1,12 +1,15 @@
 package org.paperless.de.parser;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.pdfbox.text.TextPosition;
 
 /**
  * Speicherstruktur für einen PDF-Text. Stellt eine Zeile dar, sollte durch
- * {@link TextStripper#splitText} spaltenweise getrennt sein.
+ * {@link TextStripper#nextSplit} spaltenweise getrennt sein. Standardmäßig
+ * werden nur Text, Seitenzahl und Koordinatenrahmen gespeichert, die
+ * Glyphenliste wird nach der Berechnung des Rahmens verworfen.
  * 
  * @author nba
  */
@@ -18,7 +21,7 @@ public class PdfString {
 	private String text;
 	
 	/**
-	 * Glyphenliste
+	 * Glyphenliste, nur gesetzt, wenn sie ausdrücklich behalten werden soll
 	 */
 	private List<TextPosition> positions;
 	
@@ -33,7 +36,8 @@ public class PdfString {
 	private int pageNum;
 	
 	/**
-	 * Konstruktor, wenn der Text bekannt ist
+	 * Konstruktor, wenn der Text bekannt ist. Die Glyphenliste wird nicht
+	 * gespeichert.
 	 * @param text
 	 * 			Text, der durch die Glyphen repräsentiert wird
 	 * @param positions
@@ -42,11 +46,42 @@ public class PdfString {
 	 * 			Seitenzahl
 	 */
 	public PdfString (String text, List<TextPosition> positions, int pageNum) {
+		this(text, positions, pageNum, false);
+	}
+	
+	/**
+	 * Konstruktor, wenn der Text bekannt ist
+	 * @param text
+	 * 			Text, der durch die Glyphen repräsentiert wird
+	 * @param positions
+	 * 			Glyphenliste
+	 * @param pageNum
+	 * 			Seitenzahl
+	 * @param keepPositions
+	 * 			gibt an, ob die Glyphenliste gespeichert werden soll, s.
+	 * 			{@link #getPositions()}
+	 */
+	public PdfString (String text, List<TextPosition> positions, int pageNum, boolean keepPositions) {
 		this.text = text;
-		this.positions = positions;
 		this.pageNum = pageNum;
 		
-		calcTextBox();
+		calcTextBox(positions, 0, positions.size());
+		if (keepPositions) {
+			this.positions = positions;
+		}
+	}
+	
+	/**
+	 * Konstruktor für unbekannten Textinhalt. Die Glyphenliste wird nicht
+	 * gespeichert.
+	 * 
+	 * @param positions
+	 * 			Glyphenliste
+	 * @param pageNum
+	 * 			Seitenzahl
+	 */
+	public PdfString(List<TextPosition> positions, int pageNum) {
+		this(positions, pageNum, false);
 	}
 	
 	/**
@@ -56,35 +91,103 @@ public class PdfString {
 	 * 			Glyphenliste
 	 * @param pageNum
 	 * 			Seitenzahl
+	 * @param keepPositions
+	 * 			gibt an, ob die Glyphenliste gespeichert werden soll, s.
+	 * 			{@link #getPositions()}
 	 */
+	public PdfString(List<TextPosition> positions, int pageNum, boolean keepPositions) {
+		this(positions, 0, positions.size(), pageNum, false);
+		if (keepPositions) {
+			this.positions = positions;
+		}
+	}
 	
-	public PdfString(List<TextPosition> positions, int pageNum) {
-		this.positions = positions;
+	/**
+	 * Konstruktor für unbekannten Textinhalt aus einem Abschnitt einer
+	 * Glyphenliste, s. {@link TextStripper#nextSplit}. Der Text wird in einem
+	 * Durchlauf aus den Glyphen gebildet, die Glyphenliste nur bei Bedarf
+	 * kopiert.
+	 * 
+	 * @param positions
+	 * 			Glyphenliste
+	 * @param from
+	 * 			Index der ersten Glyphe des Abschnitts
+	 * @param to
+	 * 			Index hinter der letzten Glyphe des Abschnitts, muss größer
+	 * 			als <code>from</code> sein
+	 * @param pageNum
+	 * 			Seitenzahl
+	 * @param keepPositions
+	 * 			gibt an, ob die Glyphen des Abschnitts gespeichert werden
+	 * 			sollen, s. {@link #getPositions()}
+	 */
+	PdfString(List<TextPosition> positions, int from, int to, int pageNum, boolean keepPositions) {
 		this.pageNum = pageNum;
 		
 		//Text wird aus den einzelnen Glyphen gebildet
-		this.text = "";
-		for (TextPosition p : positions) {
-			this.text += p.getUnicode();
+		StringBuilder builder = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			builder.append(positions.get(i).getUnicode());
 		}
+		this.text = builder.toString();
 		
-		calcTextBox();
+		calcTextBox(positions, from, to);
+		if (keepPositions) {
+			this.positions = new ArrayList<TextPosition>(positions.subList(from, to));
+		}
+	}
+	
+	/**
+	 * Konstruktor für einen Text mit bereits bekanntem Koordinatenrahmen,
+	 * z.B. aus einem gespeicherten Layout.
+	 * 
+	 * @param text
+	 * 			Text
+	 * @param pageNum
+	 * 			Seitenzahl
+	 * @param firstX
+	 * 			Anfang des Koordinatenrahmens in X-Richtung
+	 * @param firstY
+	 * 			Anfang des Koordinatenrahmens in Y-Richtung
+	 * @param lastX
+	 * 			Ende des Koordinatenrahmens in X-Richtung
+	 * @param lastY
+	 * 			Ende des Koordinatenrahmens in Y-Richtung
+	 */
+	public PdfString(String text, int pageNum, float firstX, float firstY, float lastX, float lastY) {
+		this.text = text;
+		this.pageNum = pageNum;
+		this.firstX = firstX;
+		this.firstY = firstY;
+		this.lastX = lastX;
+		this.lastY = lastY;
 	}
 	
 	/**
 	 * Methode zur Berechnung der Rahmenkoordinaten des Texts. Dazu werden die
-	 * Extremwerte aller Glyphen genutzt.
+	 * Extremwerte aller Glyphen genutzt. Die Y-Koordinaten sind die
+	 * Grundlinien der Glyphen, gemessen vom oberen Seitenrand.
+	 * @param positions
+	 * 			Glyphenliste
+	 * @param from
+	 * 			Index der ersten Glyphe
+	 * @param to
+	 * 			Index hinter der letzten Glyphe, der Bereich darf nicht leer
+	 * 			sein
 	 */
-	private void calcTextBox() {
+	private void calcTextBox(List<TextPosition> positions, int from, int to) {
 		//Initialisierung mit den Werten des ersten Glyphen
-		this.firstX = positions.get(0).getX();
-		this.firstY = positions.get(0).getY();
-		this.lastX = positions.get(0).getEndX();
-		this.lastY = positions.get(0).getEndY();
+		TextPosition first = positions.get(from);
+		this.firstX = first.getX();
+		this.firstY = first.getY();
+		this.lastX = first.getEndX();
+		//getEndY() ist nicht an den oberen Seitenrand angepasst, daher getY()
+		this.lastY = first.getY();
 		
-		for (TextPosition pos : positions) {
+		for (int i = from; i < to; i++) {
+			TextPosition pos = positions.get(i);
 			//Leere Glyphen an Anfang oder Ende ignorieren
-			if (pos.getUnicode().trim().isEmpty()) {
+			if (isBlank(pos.getUnicode())) {
 				continue;
 			}
 			if (pos.getX() < this.firstX) {
@@ -96,10 +199,26 @@ public class PdfString {
 			if (pos.getEndX() > this.lastX) {
 				this.lastX = pos.getEndX();
 			}
-			if (pos.getEndY() > this.lastY) {
-				this.lastY = pos.getEndY();
+			if (pos.getY() > this.lastY) {
+				this.lastY = pos.getY();
+			}
+		}
+	}
+
+	/**
+	 * prüft ohne neue Zeichenkette wie <code>text.trim().isEmpty()</code>, ob
+	 * ein Text nur aus Leer- und Steuerzeichen besteht
+	 * @param text
+	 * 			Text
+	 * @return <code>true</code>, wenn der Text leer ist
+	 */
+	static boolean isBlank(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > ' ') {
+				return false;
 			}
 		}
+		return true;
 	}
 
 	/**
@@ -128,7 +247,7 @@ public class PdfString {
 
 	/**
 	 * @return Ende des Koordinatenrahmens um den Text in Y-Richtung.
-	 * Entspricht dem Abstand vom linken Seitenrand.
+	 * Entspricht dem Abstand vom oberen Seitenrand.
 	 */
 	public float getLastY() {
 		return lastY;
@@ -147,4 +266,12 @@ public class PdfString {
 	public int getPageNum() {
 		return pageNum;
 	}
+	
+	/**
+	 * @return Glyphenliste oder <code>null</code>, wenn sie beim Erstellen
+	 * nicht behalten werden sollte
+	 */
+	public List<TextPosition> getPositions() {
+		return positions;
+	}
 }
@@ -0,0 +1,143 @@
+package org.paperless.de.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Sammelt die Ergebnisse beliebig vieler Beispieldokumente für die
+ * Erstellung eines Templates. Alle Beispiele werden mit einem
+ * Referenzdokument {@link TextStripper#compare verglichen}; für jeden Text
+ * der Referenz wird gezählt, in wie vielen Beispielen an derselben Position
+ * ein anderer Text und in wie vielen derselbe Text steht.</p>
+ * <p>Es wird nur das Referenzdokument gehalten, die Beispiele können nach
+ * {@link #add} verworfen werden. {@link #add} darf aus mehreren Threads
+ * gleichzeitig aufgerufen werden.</p>
+ *
+ * @author nba
+ */
+public class SampleAggregate {
+
+	/**
+	 * Referenzdokument, mit dem alle Beispiele verglichen werden
+	 */
+	private final TextStripper reference;
+
+	/**
+	 * Toleranzen beim Vergleich
+	 */
+	private final float xTol, yTol;
+
+	/**
+	 * Anzahl der Beispiele, in denen sich ein Referenztext unterscheidet.
+	 * Enthält nur Texte, die sich mindestens einmal unterschieden haben.
+	 */
+	private final Map<PdfString, Integer> differences = new IdentityHashMap<PdfString, Integer>();
+
+	/**
+	 * Anzahl der Beispiele, in denen an der Position eines Referenztexts
+	 * derselbe Text steht. Enthält nur Texte, die mindestens einmal gleich
+	 * waren.
+	 */
+	private final Map<PdfString, Integer> matches = new IdentityHashMap<PdfString, Integer>();
+
+	/**
+	 * Anzahl der bisher verglichenen Beispiele
+	 */
+	private int samples = 0;
+
+	/**
+	 * Konstruktor
+	 * @param reference
+	 * 			geparstes Referenzdokument
+	 * @param xTol
+	 * 			Toleranz beim Vergleich in X-Richtung
+	 * @param yTol
+	 * 			Toleranz beim Vergleich in Y-Richtung
+	 */
+	public SampleAggregate(TextStripper reference, float xTol, float yTol) {
+		this.reference = reference;
+		this.xTol = xTol;
+		this.yTol = yTol;
+	}
+
+	/**
+	 * Vergleicht ein Beispiel mit der Referenz und nimmt die Unterschiede
+	 * und Übereinstimmungen in die Zählung auf.
+	 * @param sample
+	 * 			geparstes Beispieldokument
+	 */
+	public void add(TextStripper sample) {
+		//Vergleich außerhalb der Sperre, die Referenz wird nur gelesen
+		List<PdfString> equal = new ArrayList<PdfString>();
+		List<PdfString> diff = reference.compare(sample, xTol, yTol, equal);
+		synchronized (this) {
+			samples++;
+			count(differences, diff);
+			count(matches, equal);
+		}
+	}
+
+	/**
+	 * Erhöht die Zählung für jeden Text der Referenz um eins
+	 * @param counts
+	 * 			Anzahl Beispiele je Text, s. {@link #differences} bzw.
+	 * 			{@link #matches}
+	 * @param texts
+	 * 			Texte der Referenz aus einem Vergleich, jeder höchstens einmal
+	 */
+	private static void count(Map<PdfString, Integer> counts, List<PdfString> texts) {
+		for (PdfString text : texts) {
+			Integer count = counts.get(text);
+			counts.put(text, count == null ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * @return Anzahl der bisher verglichenen Beispiele (ohne Referenz)
+	 */
+	public synchronized int getSampleCount() {
+		return samples;
+	}
+
+	/**
+	 * @return alle Texte der Referenz, die sich in mindestens einem Beispiel
+	 * unterschieden haben, in Dokumentreihenfolge
+	 */
+	public synchronized List<PdfString> getVariableTexts() {
+		List<PdfString> ret = new ArrayList<PdfString>();
+		for (PdfString text : reference.getTexts()) {
+			if (differences.containsKey(text)) {
+				ret.add(text);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return alle Texte der Referenz, die in jedem Beispiel unverändert an
+	 * derselben Position standen, in Dokumentreihenfolge. Texte, die in
+	 * einem Beispiel fehlen, gehören nicht dazu.
+	 */
+	public synchronized List<PdfString> getStaticTexts() {
+		List<PdfString> ret = new ArrayList<PdfString>();
+		for (PdfString text : reference.getTexts()) {
+			Integer count = matches.get(text);
+			if (count != null && count == samples) {
+				ret.add(text);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param text
+	 * 			Text der Referenz
+	 * @return Anzahl der Beispiele, in denen sich der Text unterschieden hat
+	 */
+	public synchronized int getDifferenceCount(PdfString text) {
+		Integer count = differences.get(text);
+		return count == null ? 0 : count;
+	}
+}
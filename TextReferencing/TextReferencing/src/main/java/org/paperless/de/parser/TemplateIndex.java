@@ -0,0 +1,204 @@
+package org.paperless.de.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.paperless.de.util.Attribute;
+
+/**
+ * <p>Invertierter Index über die Ankertexte mehrerer Templates, s.
+ * {@link org.paperless.de.util.AttributePlan#getAnchors()}. Schlüssel sind
+ * Text, Seite und die auf {@link #CELL} gerasterte Startposition eines
+ * Ankers.</p>
+ * <p>Für ein Dokument wird jeder Text der Ankerseiten nur in den
+ * benachbarten Rasterzellen nachgeschlagen, der Aufwand hängt also von der
+ * Anzahl der Texte und Treffer ab, nicht von der Anzahl der Templates. Ein
+ * Template ist Kandidat, wenn mindestens {@link #MIN_RATIO} seiner Anker
+ * innerhalb der Toleranzen gefunden wurden. Templates ohne Anker sind
+ * immer Kandidaten.</p>
+ *
+ * @author nba
+ */
+public class TemplateIndex {
+
+	/**
+	 * Rasterweite in Punkten
+	 */
+	private static final float CELL = 10f;
+
+	/**
+	 * Anteil der Anker eines Templates, die gefunden werden müssen
+	 */
+	private static final float MIN_RATIO = 0.5f;
+
+	/**
+	 * Eintrag im Index
+	 */
+	private static class Entry {
+
+		/**
+		 * Index des Templates
+		 */
+		final int template;
+
+		/**
+		 * fortlaufende Nummer des Ankers über alle Templates
+		 */
+		final int id;
+
+		/**
+		 * Ankertext mit genauer Position für den Vergleich innerhalb der
+		 * Toleranzen
+		 */
+		final Attribute anchor;
+
+		/**
+		 * Konstruktor
+		 * @param template
+		 * 			Index des Templates
+		 * @param id
+		 * 			fortlaufende Nummer des Ankers
+		 * @param anchor
+		 * 			Ankertext
+		 */
+		Entry(int template, int id, Attribute anchor) {
+			this.template = template;
+			this.id = id;
+			this.anchor = anchor;
+		}
+	}
+
+	/**
+	 * Einträge je Schlüssel, s. {@link #key}
+	 */
+	private final Map<String, List<Entry>> index = new HashMap<String, List<Entry>>();
+
+	/**
+	 * Anzahl Anker je Template
+	 */
+	private final int[] anchorCounts;
+
+	/**
+	 * Seiten, auf denen Anker liegen
+	 */
+	private final Set<Integer> pages = new HashSet<Integer>();
+
+	/**
+	 * Anzahl Anker über alle Templates
+	 */
+	private final int anchorTotal;
+
+	/**
+	 * Konstruktor
+	 * @param anchors
+	 * 			Ankertexte je Template
+	 */
+	public TemplateIndex(List<List<Attribute>> anchors) {
+		anchorCounts = new int[anchors.size()];
+		int id = 0;
+		for (int i = 0; i < anchors.size(); i++) {
+			for (Attribute anchor : anchors.get(i)) {
+				String key = key(anchor.name, anchor.page, cell(anchor.xStart), cell(anchor.yStart));
+				List<Entry> entries = index.get(key);
+				if (entries == null) {
+					entries = new ArrayList<Entry>(1);
+					index.put(key, entries);
+				}
+				entries.add(new Entry(i, id++, anchor));
+				pages.add(anchor.page);
+				anchorCounts[i]++;
+			}
+		}
+		anchorTotal = id;
+	}
+
+	/**
+	 * @return Seiten, auf denen Anker liegen. Diese müssen für
+	 * {@link #getCandidates} geparst werden.
+	 */
+	public Set<Integer> getPages() {
+		return pages;
+	}
+
+	/**
+	 * Ermittelt die Templates, deren Anker im Dokument gefunden wurden
+	 * @param texts
+	 * 			Texte des Dokuments
+	 * @param xTol
+	 * 			Toleranz in X-Richtung
+	 * @param yTol
+	 * 			Toleranz in Y-Richtung
+	 * @return Indizes der Kandidaten in aufsteigender Reihenfolge
+	 */
+	public List<Integer> getCandidates(List<PdfString> texts, float xTol, float yTol) {
+		boolean[] found = new boolean[anchorTotal];
+		int[] hits = new int[anchorCounts.length];
+		//Anzahl benachbarter Zellen, die die Toleranz abdecken
+		int reachX = (int) Math.ceil(xTol / CELL);
+		int reachY = (int) Math.ceil(yTol / CELL);
+		for (PdfString text : texts) {
+			if (!pages.contains(text.getPageNum())) {
+				continue;
+			}
+			String value = text.getText().trim();
+			int cellX = cell(text.getFirstX());
+			int cellY = cell(text.getFirstY());
+			for (int dx = -reachX; dx <= reachX; dx++) {
+				for (int dy = -reachY; dy <= reachY; dy++) {
+					List<Entry> entries = index.get(key(value, text.getPageNum(), cellX + dx, cellY + dy));
+					if (entries == null) {
+						continue;
+					}
+					for (Entry entry : entries) {
+						if (!found[entry.id] && Math.abs(text.getFirstX() - entry.anchor.xStart) <= xTol
+								&& Math.abs(text.getFirstY() - entry.anchor.yStart) <= yTol) {
+							found[entry.id] = true;
+							hits[entry.template]++;
+						}
+					}
+				}
+			}
+		}
+
+		List<Integer> ret = new ArrayList<Integer>();
+		for (int i = 0; i < anchorCounts.length; i++) {
+			if (anchorCounts[i] == 0 || hits[i] >= anchorCounts[i] * MIN_RATIO) {
+				ret.add(i);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Rastert eine Koordinate auf {@link #CELL}. Texte, deren Position sich
+	 * um höchstens die Toleranz unterscheidet, liegen so in derselben oder
+	 * einer der benachbarten Zellen, die {@link #getCandidates} durchsucht.
+	 * @param pos
+	 * 			Koordinate in Punkten
+	 * @return Nummer der Rasterzelle, abgerundet, also auch für negative
+	 * 			Koordinaten stetig
+	 */
+	private static int cell(float pos) {
+		return (int) Math.floor(pos / CELL);
+	}
+
+	/**
+	 * Bildet den Schlüssel im {@link #index}
+	 * @param text
+	 * 			Ankertext bzw. getrimmter Text des Dokuments
+	 * @param page
+	 * 			Seite
+	 * @param cellX
+	 * 			Rasterzelle der Startposition in X-Richtung, s. {@link #cell}
+	 * @param cellY
+	 * 			Rasterzelle der Startposition in Y-Richtung
+	 * @return Schlüssel aus Seite, Zelle und Text
+	 */
+	private static String key(String text, int page, int cellX, int cellY) {
+		return page + ":" + cellX + ":" + cellY + ":" + text;
+	}
+}
@@ -0,0 +1,172 @@
+package org.paperless.de.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Räumlicher Index über die Texte eines Dokuments. Die Texte werden je Seite
+ * in ein gleichmäßiges Raster über ihre Startkoordinaten einsortiert. Die
+ * Rasterweite entspricht der Toleranz, sodass für eine Suche nur die
+ * benachbarten Zellen geprüft werden müssen.
+ *
+ * @author nba
+ */
+class TextIndex {
+
+	/**
+	 * minimale Rasterweite, damit bei sehr kleinen Toleranzen nicht zu viele
+	 * Zellen entstehen
+	 */
+	private static final float MIN_CELL_SIZE = 1f;
+
+	/**
+	 * indizierte Texte
+	 */
+	private final List<PdfString> texts;
+
+	/**
+	 * Toleranzen, für die der Index aufgebaut wurde
+	 */
+	private final float xTol, yTol;
+
+	/**
+	 * Rasterweite in X- und Y-Richtung
+	 */
+	private final float cellWidth, cellHeight;
+
+	/**
+	 * <p>Raster je Seite</p>
+	 * <p>SCHLÜSSEL (äußere Map): Seitenzahl<br>
+	 * SCHLÜSSEL (innere Map): Zellennummer, s. {@link #cellKey}<br>
+	 * WERT (innere Map): Indizes der Texte in {@link #texts}, aufsteigend</p>
+	 */
+	private final Map<Integer, Map<Long, List<Integer>>> pages;
+
+	/**
+	 * Konstruktor, baut den Index auf
+	 * @param texts
+	 * 			zu indizierende Texte, dürfen danach nicht mehr verändert
+	 * 			werden
+	 * @param xTol
+	 * 			Toleranz bei der Suche in X-Richtung
+	 * @param yTol
+	 * 			Toleranz bei der Suche in Y-Richtung
+	 */
+	TextIndex(List<PdfString> texts, float xTol, float yTol) {
+		this.texts = texts;
+		this.xTol = xTol;
+		this.yTol = yTol;
+		this.cellWidth = Math.max(xTol, MIN_CELL_SIZE);
+		this.cellHeight = Math.max(yTol, MIN_CELL_SIZE);
+		this.pages = new HashMap<Integer, Map<Long, List<Integer>>>();
+
+		for (int i = 0; i < texts.size(); i++) {
+			PdfString text = texts.get(i);
+			Map<Long, List<Integer>> grid = pages.get(text.getPageNum());
+			if (grid == null) {
+				grid = new HashMap<Long, List<Integer>>();
+				pages.put(text.getPageNum(), grid);
+			}
+			long key = cellKey(cell(text.getFirstX(), cellWidth), cell(text.getFirstY(), cellHeight));
+			List<Integer> cell = grid.get(key);
+			if (cell == null) {
+				cell = new ArrayList<Integer>(2);
+				grid.put(key, cell);
+			}
+			cell.add(i);
+		}
+	}
+
+	/**
+	 * prüft, ob der Index für die gegebenen Toleranzen aufgebaut wurde
+	 * @param xTol
+	 * 			Toleranz in X-Richtung
+	 * @param yTol
+	 * 			Toleranz in Y-Richtung
+	 * @return <code>true</code>, wenn der Index weiterverwendet werden kann
+	 */
+	boolean matches(float xTol, float yTol) {
+		return this.xTol == xTol && this.yTol == yTol;
+	}
+
+	/**
+	 * Sucht den ersten Text (in Dokumentreihenfolge), dessen Startkoordinaten
+	 * innerhalb der Toleranz um die gegebene Position liegen.
+	 * @param page
+	 * 			Seitenzahl (1-basiert). Ist sie kleiner als 1, werden alle
+	 * 			Seiten durchsucht.
+	 * @param x
+	 * 			X-Koordinate des Textanfangs
+	 * @param y
+	 * 			Y-Koordinate des Textanfangs
+	 * @return der gefundene Text oder <code>null</code>
+	 */
+	PdfString find(int page, float x, float y) {
+		int best = -1;
+		if (page < 1) {
+			for (Map<Long, List<Integer>> grid : pages.values()) {
+				best = findInGrid(grid, x, y, best);
+			}
+		} else {
+			Map<Long, List<Integer>> grid = pages.get(page);
+			if (grid != null) {
+				best = findInGrid(grid, x, y, best);
+			}
+		}
+		return best < 0 ? null : texts.get(best);
+	}
+
+	/**
+	 * Durchsucht die Nachbarzellen einer Position in einem Seitenraster
+	 * @param grid
+	 * 			Raster einer Seite
+	 * @param x
+	 * 			X-Koordinate des Textanfangs
+	 * @param y
+	 * 			Y-Koordinate des Textanfangs
+	 * @param best
+	 * 			bisher bester Index oder -1
+	 * @return kleinster passender Index oder <code>best</code>
+	 */
+	private int findInGrid(Map<Long, List<Integer>> grid, float x, float y, int best) {
+		int cx = cell(x, cellWidth);
+		int cy = cell(y, cellHeight);
+		for (int i = cx - 1; i <= cx + 1; i++) {
+			for (int j = cy - 1; j <= cy + 1; j++) {
+				List<Integer> cell = grid.get(cellKey(i, j));
+				if (cell == null) {
+					continue;
+				}
+				for (int index : cell) {
+					if (best >= 0 && index >= best) {
+						//Indizes sind aufsteigend, es kann kein früherer Text mehr kommen
+						break;
+					}
+					PdfString text = texts.get(index);
+					if (Math.abs(x - text.getFirstX()) <= xTol
+							&& Math.abs(y - text.getFirstY()) <= yTol) {
+						best = index;
+						break;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return Zellennummer einer Koordinate
+	 */
+	private static int cell(float coord, float cellSize) {
+		return (int) Math.floor(coord / cellSize);
+	}
+
+	/**
+	 * @return eindeutiger Schlüssel einer Zelle aus Spalte und Zeile
+	 */
+	private static long cellKey(int column, int row) {
+		return ((long) column << 32) | (row & 0xFFFFFFFFL);
+	}
+}
@@ -1,13 +1,16 @@
 package org.paperless.de.parser;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -22,6 +25,12 @@ import org.paperless.de.util.Attribute;
  */
 public class TextStripper extends PDFTextStripper {
 	
+	/**
+	 * maximaler Abstand zweier aufeinanderfolgender Glyphen, ab dem ein Text
+	 * in {@link #nextSplit} getrennt wird
+	 */
+	public static final float SPLIT_GAP = 1f;
+	
 	/**
 	 * Liste der gefundenen Texte
 	 */
@@ -32,6 +41,77 @@ public class TextStripper extends PDFTextStripper {
 	 * {@link TextPosition} enthalten.
 	 */
 	private int currentPageNum;
+	
+	/**
+	 * räumlicher Index über {@link #texts} für {@link #getAttrValues}. Wird
+	 * bei Bedarf aufgebaut und beim Hinzufügen neuer Texte verworfen.
+	 */
+	private TextIndex index;
+	
+	/**
+	 * <p>Attribute, deren Koordinatenrahmen die zu extrahierenden Bereiche
+	 * festlegen, nach Seiten gruppiert. Ist die Map gesetzt, werden alle
+	 * Glyphen außerhalb dieser Bereiche schon vor dem Sortieren und
+	 * Gruppieren verworfen.</p>
+	 * <p>SCHLÜSSEL: Seitenzahl, 0 für Attribute ohne Seitenzahl<br>
+	 * WERT: Attribute der Seite</p>
+	 */
+	private Map<Integer, List<Attribute>> regions;
+	
+	/**
+	 * Toleranzen, um die die {@link #regions Bereiche} erweitert werden
+	 */
+	private float regionXTol, regionYTol;
+	
+	/**
+	 * gibt an, ob die {@link PdfString Texte} ihre Glyphenlisten behalten.
+	 * Standardmäßig werden diese verworfen, um Speicher zu sparen.
+	 */
+	private boolean keepPositions = false;
+	
+	/**
+	 * gibt an, ob die Glyphen ohne das Layout von {@link PDFTextStripper}
+	 * gruppiert werden, s. {@link #setRawGlyphs}
+	 */
+	private boolean rawGlyphs = false;
+	
+	/**
+	 * Glyphen der aktuellen Seite im Rohmodus in Reihenfolge des
+	 * Inhaltsstroms, wird je Seite geleert
+	 */
+	private final List<TextPosition> pageGlyphs = new ArrayList<TextPosition>();
+	
+	/**
+	 * Reihenfolge der Texte einer Seite im Rohmodus: nach Grundlinie, dann
+	 * von links nach rechts
+	 */
+	private static final Comparator<PdfString> READING_ORDER = new Comparator<PdfString>() {
+		public int compare(PdfString a, PdfString b) {
+			int ret = Float.compare(a.getFirstY(), b.getFirstY());
+			return ret != 0 ? ret : Float.compare(a.getFirstX(), b.getFirstX());
+		}
+	};
+	
+	/**
+	 * Writer für {@link #writeText}, die Ausgabe wird nicht benötigt
+	 */
+	private static final Writer NULL_WRITER = new Writer() {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+		
+		@Override
+		public void write(String str, int off, int len) {
+		}
+		
+		@Override
+		public void flush() {
+		}
+		
+		@Override
+		public void close() {
+		}
+	};
 
 	/**
 	 * Standard-Konstruktor
@@ -44,6 +124,20 @@ public class TextStripper extends PDFTextStripper {
 		this.texts = new ArrayList<PdfString>();
 	}
 	
+	/**
+	 * Konstruktor für bereits extrahierte Texte, z.B. aus einem
+	 * gespeicherten Layout. Ein weiteres Parsen ist nicht nötig.
+	 * 
+	 * @param texts
+	 * 			Texte des Dokuments
+	 * @throws IOException
+	 * 			weitergereicht von {@link PDFTextStripper#PDFTextStripper()}
+	 */
+	public TextStripper(List<PdfString> texts) throws IOException {
+		super();
+		this.texts = new ArrayList<PdfString>(texts);
+	}
+	
 	/**
 	 * Liest texte aus einem PDF-Dokument. Jede Seite des Dokuments wird
 	 * einzeln bearbeitet, damit die Seitenzahlen im Attribut mit gespeichert
@@ -55,16 +149,225 @@ public class TextStripper extends PDFTextStripper {
 	 * 			Fehler im Dokument
 	 */
 	public void parse(PDDocument doc) throws IOException {
-		setSortByPosition(true);
-		Writer dummy = new OutputStreamWriter(new ByteArrayOutputStream());
+		parse(doc, null);
+	}
+	
+	/**
+	 * Liest Texte nur von den angegebenen Seiten eines PDF-Dokuments. Alle
+	 * anderen Seiten werden übersprungen. Seitenzahlen außerhalb des
+	 * Dokuments werden ignoriert.
+	 * 
+	 * @param doc
+	 * 			zu bearbeitendes PDF-Dokument
+	 * @param pages
+	 * 			zu lesende Seitenzahlen (1-basiert) oder <code>null</code> für
+	 * 			alle Seiten
+	 * @throws IOException
+	 * 			Fehler im Dokument
+	 * @see #getPages(List)
+	 */
+	public void parse(PDDocument doc, Collection<Integer> pages) throws IOException {
+		//im Rohmodus wird ohnehin nicht nach Position sortiert
+		setSortByPosition(!rawGlyphs);
 		
 		for (currentPageNum = 1; currentPageNum <= doc.getNumberOfPages(); currentPageNum++) {
+			if (pages != null && !pages.contains(currentPageNum)) {
+				continue;
+			}
 			setStartPage(currentPageNum);
             setEndPage(currentPageNum);            
-            writeText(doc, dummy);
+            writeText(doc, NULL_WRITER);
+		}
+	}
+	
+	/**
+	 * Ermittelt die Seiten, die für eine Attributliste gelesen werden müssen.
+	 * 
+	 * @param attributes
+	 * 			Attribute eines Templates
+	 * @return  sortierte Menge der Seitenzahlen oder <code>null</code>, wenn
+	 * 			ein Attribut keine Seitenzahl hat und daher alle Seiten
+	 * 			gelesen werden müssen
+	 */
+	public static Set<Integer> getPages(List<Attribute> attributes) {
+		Set<Integer> ret = new TreeSet<Integer>();
+		for (Attribute attr : attributes) {
+			if (attr.page < 1) {
+				return null;
+			}
+			ret.add(attr.page);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Schränkt die Extraktion auf die Koordinatenrahmen der gegebenen
+	 * Attribute ein. Glyphen außerhalb aller Rahmen (jeweils um die Toleranz
+	 * erweitert) werden beim Parsen sofort verworfen. Text, der über einen
+	 * Rahmen hinausragt, wird daher abgeschnitten.
+	 * 
+	 * @param attributes
+	 * 			Attribute, deren Rahmen extrahiert werden sollen, oder
+	 * 			<code>null</code>, um wieder alle Glyphen zu extrahieren
+	 * @param xTol
+	 * 			Toleranz in X-Richtung
+	 * @param yTol
+	 * 			Toleranz in Y-Richtung
+	 * @see #getRegionValues(List, float, float)
+	 */
+	public void setRegions(List<Attribute> attributes, float xTol, float yTol) {
+		if (attributes == null) {
+			this.regions = null;
+		} else {
+			this.regions = new HashMap<Integer, List<Attribute>>();
+			for (Attribute attr : attributes) {
+				int page = attr.page < 1 ? 0 : attr.page;
+				List<Attribute> list = regions.get(page);
+				if (list == null) {
+					list = new ArrayList<Attribute>();
+					regions.put(page, list);
+				}
+				list.add(attr);
+			}
+		}
+		this.regionXTol = xTol;
+		this.regionYTol = yTol;
+	}
+	
+	/**
+	 * <p>Legt fest, ob die Glyphen im Rohmodus gruppiert werden. Dabei wird
+	 * die Layoutanalyse von {@link PDFTextStripper} (Sortierung aller
+	 * Glyphen, Zeilen-, Wort- und Absatzerkennung, Artikel) übersprungen.
+	 * Die Glyphen einer Seite werden in der Reihenfolge des Inhaltsstroms
+	 * gesammelt und mit derselben Abstandsregel wie {@link #nextSplit} zu
+	 * Texten zusammengefasst, zusätzlich wird bei einem Wechsel der
+	 * Grundlinie getrennt. Nur die fertigen Texte einer Seite werden nach
+	 * Position sortiert.</p>
+	 * <p>Doppelt gezeichnete, überlappende Glyphen (z.B. simulierter
+	 * Fettdruck) werden im Rohmodus nicht entfernt, und Diakritika werden
+	 * nicht mit dem Grundzeichen zusammengeführt.</p>
+	 * 
+	 * @param rawGlyphs
+	 * 			<code>true</code> für den Rohmodus
+	 */
+	public void setRawGlyphs(boolean rawGlyphs) {
+		this.rawGlyphs = rawGlyphs;
+	}
+	
+	/**
+	 * Überschreibt die entsprechende Methode in {@link PDFTextStripper}. Im
+	 * Bereichsmodus (s. {@link #setRegions}) werden nur Glyphen innerhalb
+	 * der Attributrahmen weitergegeben. Im Rohmodus (s.
+	 * {@link #setRawGlyphs}) werden die Glyphen nur gesammelt.
+	 */
+	@Override
+	protected void processTextPosition(TextPosition text) {
+		if (regions != null && !inRegions(regions.get(currentPageNum), text)
+				&& !inRegions(regions.get(0), text)) {
+			return;
+		}
+		if (rawGlyphs) {
+			pageGlyphs.add(text);
+		} else {
+			super.processTextPosition(text);
 		}
 	}
 	
+	/**
+	 * Überschreibt die entsprechende Methode in {@link PDFTextStripper}. Im
+	 * Rohmodus werden hier die gesammelten Glyphen der Seite zu Texten
+	 * zusammengefasst.
+	 */
+	@Override
+	protected void writePage() throws IOException {
+		if (!rawGlyphs) {
+			super.writePage();
+			return;
+		}
+		
+		int first = texts.size();
+		int size = pageGlyphs.size();
+		for (int start = 0, end; start < size; start = end) {
+			end = nextRawSplit(start);
+			if (!isBlank(start, end)) {
+				texts.add(new PdfString(pageGlyphs, start, end, currentPageNum, keepPositions));
+			}
+		}
+		Collections.sort(texts.subList(first, texts.size()), READING_ORDER);
+		if (texts.size() > first) {
+			index = null;
+		}
+		pageGlyphs.clear();
+	}
+	
+	/**
+	 * Ermittelt im Rohmodus das Ende des Texts ab <code>from</code>. Getrennt
+	 * wird wie in {@link #nextSplit} bei zu großem Abstand in X-Richtung und
+	 * zusätzlich bei einem Wechsel der Grundlinie.
+	 * 
+	 * @param from
+	 * 			Index der ersten Glyphe in {@link #pageGlyphs}
+	 * @return Index hinter der letzten Glyphe des Texts
+	 */
+	private int nextRawSplit(int from) {
+		int size = pageGlyphs.size();
+		TextPosition last = pageGlyphs.get(from);
+		for (int i = from + 1; i < size; i++) {
+			TextPosition pos = pageGlyphs.get(i);
+			if (Math.abs(pos.getY() - last.getY()) > SPLIT_GAP
+					|| (!(last.getEndX() < 0) && Math.abs(pos.getX() - last.getEndX()) > SPLIT_GAP)) {
+				return i;
+			}
+			last = pos;
+		}
+		return size;
+	}
+	
+	/**
+	 * prüft, ob ein Bereich von {@link #pageGlyphs} nur aus Leerzeichen
+	 * besteht
+	 */
+	private boolean isBlank(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!PdfString.isBlank(pageGlyphs.get(i).getUnicode())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * prüft, ob ein Glyph in einem der Bereiche liegt
+	 * @param attributes
+	 * 			Attribute mit den Bereichen oder <code>null</code>
+	 * @param text
+	 * 			Glyph auf der aktuellen Seite
+	 * @return <code>true</code>, wenn der Glyph in mindestens einem Bereich
+	 * 			liegt
+	 */
+	private boolean inRegions(List<Attribute> attributes, TextPosition text) {
+		if (attributes != null) {
+			for (Attribute attr : attributes) {
+				if (inRegion(attr, currentPageNum, text.getX(), text.getY(), regionXTol, regionYTol)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Legt fest, ob die erstellten {@link PdfString Texte} ihre Glyphenlisten
+	 * behalten sollen, s. {@link PdfString#getPositions()}. Gilt nur für
+	 * danach geparste Texte.
+	 * 
+	 * @param keepPositions
+	 * 			<code>true</code>, wenn die Glyphen benötigt werden
+	 */
+	public void setKeepPositions(boolean keepPositions) {
+		this.keepPositions = keepPositions;
+	}
+	
 	/**
 	 * Überschreibt die entsprechende Methode in {@link PDFTextStripper}.
 	 * Statt den String irgendwohin zu schreiben, wird er in dieser Methode nur
@@ -76,13 +379,15 @@ public class TextStripper extends PDFTextStripper {
 			this.texts = new ArrayList<PdfString>();
 		}
 		
-		if (!text.trim().isEmpty()) {
-			List<List<TextPosition>> splitPos = splitText(positions);
-			if (splitPos.size() == 1) {
-				texts.add(new PdfString(text, positions, currentPageNum));
+		if (!PdfString.isBlank(text)) {
+			index = null;
+			int end = nextSplit(positions, 0);
+			if (end == positions.size()) {
+				texts.add(new PdfString(text, positions, currentPageNum, keepPositions));
 			} else {
-				for (List<TextPosition> pos : splitPos) {
-					texts.add(new PdfString(pos, currentPageNum));
+				//Abschnitte über Indexbereiche der Originalliste bilden
+				for (int start = 0; start < positions.size(); start = end, end = nextSplit(positions, start)) {
+					texts.add(new PdfString(positions, start, end, currentPageNum, keepPositions));
 				}
 			}
 		}
@@ -99,8 +404,11 @@ public class TextStripper extends PDFTextStripper {
 	/**
 	 * <p>Vergleicht die eigenen Texte mit denen des anderen TextStrippers und
 	 * gibt unterschiedliche Texte, die an derselben Position stehen, zurück.</p>
-	 * <p>TODO/BUG: es wird nach dem ersten Text an derselben Position gesucht,
-	 * nicht nach dem am besten passendsten. Das köönte zu Problemen führen.</p>
+	 * <p>Für jeden eigenen Text wird auf derselben Seite das Gegenstück mit
+	 * den nächstgelegenen Startkoordinaten innerhalb der Toleranz gesucht.
+	 * Dazu werden die Texte des anderen TextStrippers einmalig in einen
+	 * nach Seite und Y-Koordinate sortierten {@link LayoutStore} überführt,
+	 * der Vergleich benötigt also O(n log m) statt O(n × m).</p>
 	 * @param te
 	 * 			anderer TextStripper zum Vergleich
 	 * @param xTol
@@ -111,25 +419,38 @@ public class TextStripper extends PDFTextStripper {
 	 * 			Liste der unterschiedlichen Texte
 	 */
 	public List<PdfString> compare(TextStripper te, float xTol, float yTol) {
+		return compare(te, xTol, yTol, null);
+	}
+
+	/**
+	 * Vergleich wie {@link #compare(TextStripper, float, float)}, sammelt
+	 * zusätzlich die eigenen Texte, deren Gegenstück denselben Text hat.
+	 * Texte ohne Gegenstück sind in keiner der beiden Listen enthalten.
+	 * @param te
+	 * 			anderer TextStripper zum Vergleich
+	 * @param xTol
+	 * 			Toleranz beim Vergleich in X-Richtung
+	 * @param yTol
+	 * 			Toleranz beim Vergleich in Y-Richtung
+	 * @param equal
+	 * 			nimmt die gleichen Texte auf oder <code>null</code>
+	 * @return
+	 * 			Liste der unterschiedlichen Texte
+	 */
+	public List<PdfString> compare(TextStripper te, float xTol, float yTol, List<PdfString> equal) {
 		List<PdfString> ret = new ArrayList<PdfString>();
+		LayoutStore other = new LayoutStore(te.getTexts());
 		
 		for (PdfString text : texts) {
-			float xStart = text.getFirstX();
-			float yStart = text.getFirstY();
-			String textString = text.getText();
-			
-			for (PdfString otherText : te.getTexts()) {
-				if (Math.abs(xStart - otherText.getFirstX()) > xTol) {
-					continue;
-				}
-				if (Math.abs(yStart - otherText.getFirstY()) > yTol) {
-					continue;
-				}
-				//sind an gleicher Position -> Texte vergleichen, unterschiedliche zurückgeben
-				if (!textString.equals(otherText.getText())) {
-					ret.add(text);
-					break;
-				}
+			int match = other.findNearest(text.getPageNum(), text.getFirstX(), text.getFirstY(), xTol, yTol);
+			if (match < 0) {
+				continue;
+			}
+			//sind an gleicher Position -> Texte vergleichen, unterschiedliche zurückgeben
+			if (!other.textEquals(match, text.getText())) {
+				ret.add(text);
+			} else if (equal != null) {
+				equal.add(text);
 			}
 		}
 		
@@ -139,7 +460,9 @@ public class TextStripper extends PDFTextStripper {
 	/**
 	 * Gibt eine Map der Attributwerte aus diesem Dokument zu einer gegebenen
 	 * Attributliste zurück. Wird ein Attribut nicht gefunden, wird als
-	 * Attributwert "N/A" eingetragen.
+	 * Attributwert "N/A" eingetragen. Es werden nur Texte auf der Seite des
+	 * Attributs berücksichtigt, die Suche erfolgt über einen seitenweisen
+	 * {@link TextIndex räumlichen Index}.
 	 * 
 	 * @param attributes
 	 * 			Liste der Attribute, die mit dem Dokument abgeglichen werden
@@ -154,49 +477,111 @@ public class TextStripper extends PDFTextStripper {
 	 * 			WERT: Attributwert aus dem Dokument oder "N/A"
 	 */
 	public Map<String, String> getAttrValues(List<Attribute> attributes, float xTol, float yTol) {
+		if (index == null || !index.matches(xTol, yTol)) {
+			index = new TextIndex(texts, xTol, yTol);
+		}
+		
+		HashMap<String, String> ret = new HashMap<String, String>();
+		for (Attribute attr : attributes) {
+			PdfString text = index.find(attr.page, attr.xStart, attr.yStart);
+			ret.put(attr.name, text == null ? "N/A" : text.getText());
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Gibt eine Map der Attributwerte zurück, bei der jeder Wert aus allen
+	 * Texten innerhalb des Koordinatenrahmens des Attributs zusammengesetzt
+	 * wird. Texte über mehrere Zeilen werden dabei, getrennt durch ein
+	 * Leerzeichen, zu einem Wert zusammengefasst. Sinnvoll in Verbindung mit
+	 * {@link #setRegions}. Wird kein Text gefunden, wird als Attributwert
+	 * "N/A" eingetragen.
+	 * 
+	 * @param attributes
+	 * 			Liste der Attribute, die mit dem Dokument abgeglichen werden
+	 * 			sollen.
+	 * @param xTol
+	 * 			Toleranz in X-Richtung, um die die Rahmen erweitert werden
+	 * @param yTol
+	 * 			Toleranz in Y-Richtung, um die die Rahmen erweitert werden
+	 * @return  <p>Mapping der Attributwerte</p>
+	 * 			KEY: Attributname aus der Attributliste, alle Attribute werden
+	 * 				belegt.<br>
+	 * 			WERT: Attributwert aus dem Dokument oder "N/A"
+	 */
+	public Map<String, String> getRegionValues(List<Attribute> attributes, float xTol, float yTol) {
 		HashMap<String, String> ret = new HashMap<String, String>();
-		ATTRLOOP:for (Attribute attr : attributes) {
+		for (Attribute attr : attributes) {
+			StringBuilder value = new StringBuilder();
+			//Texte liegen durch die Sortierung bereits in Lesereihenfolge vor
 			for (PdfString text : texts) {
-				if (Math.abs(attr.xStart - text.getFirstX()) <= xTol) {
-					if (Math.abs(attr.yStart - text.getFirstY()) <= yTol) {
-						ret.put(attr.name, text.getText());
-						continue ATTRLOOP;
+				if (inRegion(attr, text.getPageNum(), text.getFirstX(), text.getFirstY(), xTol, yTol)) {
+					if (value.length() > 0) {
+						value.append(' ');
 					}
+					value.append(text.getText().trim());
 				}
 			}
-			ret.put(attr.name, "N/A");
+			ret.put(attr.name, value.length() == 0 ? "N/A" : value.toString());
 		}
 		
 		return ret;
 	}
 	
 	/**
-	 * Trennt den Text aus der Glyphliste in mehrere Glyphlisten, wenn der
-	 * Abstand zwischen zwei aufeinanderfolgenden Zeichen zu groß ist.
+	 * prüft, ob eine Position im Koordinatenrahmen eines Attributs liegt
 	 * 
-	 * @param position
+	 * @param attr
+	 * 			Attribut mit Seitenzahl und Koordinatenrahmen. Ist die
+	 * 			Seitenzahl kleiner als 1, wird jede Seite akzeptiert.
+	 * @param page
+	 * 			Seitenzahl der Position
+	 * @param x
+	 * 			X-Koordinate der Position
+	 * @param y
+	 * 			Y-Koordinate der Position (Grundlinie)
+	 * @param xTol
+	 * 			Toleranz in X-Richtung
+	 * @param yTol
+	 * 			Toleranz in Y-Richtung
+	 * @return <code>true</code>, wenn die Position im erweiterten Rahmen liegt
+	 */
+	private static boolean inRegion(Attribute attr, int page, float x, float y, float xTol, float yTol) {
+		if (attr.page >= 1 && attr.page != page) {
+			return false;
+		}
+		return x >= attr.xStart - xTol && x <= Math.max(attr.xStart, attr.xEnd) + xTol
+				&& y >= attr.yStart - yTol && y <= Math.max(attr.yStart, attr.yEnd) + yTol;
+	}
+	
+	/**
+	 * Trennt den Text aus der Glyphliste, wenn der Abstand zwischen zwei
+	 * aufeinanderfolgenden Zeichen zu groß ist. Statt Unterlisten zu bilden,
+	 * wird nur das Ende des Abschnitts ab <code>from</code> ermittelt, die
+	 * Abschnitte sind also Indexbereiche der Originalliste.
+	 * 
+	 * @param positions
 	 * 			Glyphliste aus dem Text - sollte geordnet sein
+	 * @param from
+	 * 			Index der ersten Glyphe des Abschnitts
 	 * @return
-	 * 			eine Liste von Unterglyphlisten, darin sollten alle Glyphen aus
-	 * 			der Originalliste vorkommen. 
+	 * 			Index hinter der letzten Glyphe des Abschnitts, also der
+	 * 			Anfang des nächsten Abschnitts oder die Länge der Liste
 	 */
-	private List<List<TextPosition>> splitText(List<TextPosition> position) {
-		List<List<TextPosition>> ret = new ArrayList<List<TextPosition>>();
-		List<TextPosition> currentList = new ArrayList<TextPosition>();
-		ret.add(currentList);
-		
-		float lastXEnd = -1f;
-		for (TextPosition pos : position) {
-			if (!(lastXEnd < 0)) {
-				if (Math.abs(pos.getX() - lastXEnd) > 1) {
-					currentList = new ArrayList<TextPosition>();
-					ret.add(currentList);
-				}
+	static int nextSplit(List<TextPosition> positions, int from) {
+		int size = positions.size();
+		if (from >= size) {
+			return size;
+		}
+		float lastXEnd = positions.get(from).getEndX();
+		for (int i = from + 1; i < size; i++) {
+			TextPosition pos = positions.get(i);
+			if (!(lastXEnd < 0) && Math.abs(pos.getX() - lastXEnd) > SPLIT_GAP) {
+				return i;
 			}
-			currentList.add(pos);
 			lastXEnd = pos.getEndX();
 		}
-		
-		return ret;
+		return size;
 	}
 }
@@ -0,0 +1,89 @@
+package org.paperless.de.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Schreibt Dateien über eine temporäre Datei im selben Verzeichnis, die
+ * anschließend atomar an ihren Platz verschoben wird. Leser sehen so
+ * entweder die alte oder die vollständige neue Fassung, auch wenn der
+ * Prozess beim Schreiben abbricht.
+ *
+ * @author nba
+ */
+public class AtomicFiles {
+
+	/**
+	 * Puffergröße beim Schreiben
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Inhalt einer Datei, wird beim {@link AtomicFiles#write(File, Content)}
+	 * in die temporäre Datei geschrieben
+	 */
+	public interface Content {
+
+		/**
+		 * @param out
+		 * 			gepufferte Ausgabe in die temporäre Datei, wird vom
+		 * 			Aufrufer geschlossen
+		 * @throws IOException
+		 * 			Fehler beim Schreiben
+		 */
+		void writeTo(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * keine Instanzen
+	 */
+	private AtomicFiles() {
+	}
+
+	/**
+	 * Schreibt eine Datei über eine temporäre Datei
+	 * @param file
+	 * 			Zieldatei, wird ersetzt
+	 * @param content
+	 * 			Inhalt
+	 * @throws IOException
+	 * 			Fehler beim Schreiben oder Verschieben, die Zieldatei ist
+	 * 			dann unverändert
+	 */
+	public static void write(File file, Content content) throws IOException {
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+				content.writeTo(out);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Schreibt einen Text in UTF-8 über eine temporäre Datei
+	 * @param file
+	 * 			Zieldatei, wird ersetzt
+	 * @param text
+	 * 			Inhalt
+	 * @throws IOException
+	 * 			Fehler beim Schreiben oder Verschieben
+	 */
+	public static void write(File file, String text) throws IOException {
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		write(file, new Content() {
+
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.write(bytes);
+			}
+		});
+	}
+}
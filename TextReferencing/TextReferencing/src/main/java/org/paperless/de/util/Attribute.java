@@ -1,7 +1,8 @@
 package org.paperless.de.util;
 
 /**
- * Speicherklasse für ein Attribut als POJO
+ * Speicherklasse für ein Attribut als POJO. Instanzen sind unveränderlich
+ * und können von mehreren Threads gemeinsam genutzt werden.
  * 
  * @author nba
  */
@@ -10,15 +11,39 @@ public class Attribute {
 	/**
 	 * Koordinaten für Start und Ende des Texts relativ zum Dokument
 	 */
-	public float xStart, yStart, xEnd, yEnd;
+	public final float xStart, yStart, xEnd, yEnd;
 	
 	/**
 	 * Seitenzahl (1-basiert)
 	 */
-	public int page;
+	public final int page;
 	
 	/**
 	 * Name des Attributs
 	 */
-	public String name;
+	public final String name;
+	
+	/**
+	 * Konstruktor
+	 * @param name
+	 * 			Name des Attributs
+	 * @param page
+	 * 			Seitenzahl (1-basiert)
+	 * @param xStart
+	 * 			Anfang des Koordinatenrahmens in X-Richtung
+	 * @param yStart
+	 * 			Anfang des Koordinatenrahmens in Y-Richtung
+	 * @param xEnd
+	 * 			Ende des Koordinatenrahmens in X-Richtung
+	 * @param yEnd
+	 * 			Ende des Koordinatenrahmens in Y-Richtung
+	 */
+	public Attribute(String name, int page, float xStart, float yStart, float xEnd, float yEnd) {
+		this.name = name;
+		this.page = page;
+		this.xStart = xStart;
+		this.yStart = yStart;
+		this.xEnd = xEnd;
+		this.yEnd = yEnd;
+	}
 }
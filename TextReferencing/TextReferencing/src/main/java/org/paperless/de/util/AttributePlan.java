@@ -0,0 +1,117 @@
+package org.paperless.de.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.paperless.de.parser.TextStripper;
+
+/**
+ * Unveränderliche, nach Seiten geordnete Darstellung eines Templates. Wird
+ * einmal über den {@link TemplateLoader} geladen und kann dann von mehreren
+ * Threads gemeinsam genutzt werden.
+ *
+ * @author nba
+ */
+public class AttributePlan {
+
+	/**
+	 * Attribute in der Reihenfolge des Templates
+	 */
+	private final List<Attribute> attributes;
+
+	/**
+	 * <p>Attribute je Seite</p>
+	 * <p>SCHLÜSSEL: Seitenzahl, aufsteigend<br>
+	 * WERT: Attribute der Seite in der Reihenfolge des Templates</p>
+	 */
+	private final Map<Integer, List<Attribute>> byPage;
+
+	/**
+	 * benötigte Seiten, s. {@link TextStripper#getPages}
+	 */
+	private final Set<Integer> pages;
+
+	/**
+	 * statische Ankertexte des Templates, s. {@link #getAnchors()}
+	 */
+	private final List<Attribute> anchors;
+
+	/**
+	 * Konstruktor für ein Template ohne Ankertexte
+	 * @param attributes
+	 * 			Attribute in der Reihenfolge des Templates
+	 */
+	public AttributePlan(List<Attribute> attributes) {
+		this(attributes, Collections.<Attribute>emptyList());
+	}
+
+	/**
+	 * Konstruktor
+	 * @param attributes
+	 * 			Attribute in der Reihenfolge des Templates
+	 * @param anchors
+	 * 			statische Ankertexte, s. {@link #getAnchors()}
+	 */
+	public AttributePlan(List<Attribute> attributes, List<Attribute> anchors) {
+		this.attributes = Collections.unmodifiableList(new ArrayList<Attribute>(attributes));
+		this.anchors = Collections.unmodifiableList(new ArrayList<Attribute>(anchors));
+
+		TreeMap<Integer, List<Attribute>> pageMap = new TreeMap<Integer, List<Attribute>>();
+		for (Attribute attr : attributes) {
+			List<Attribute> list = pageMap.get(attr.page);
+			if (list == null) {
+				list = new ArrayList<Attribute>();
+				pageMap.put(attr.page, list);
+			}
+			list.add(attr);
+		}
+		for (Map.Entry<Integer, List<Attribute>> entry : pageMap.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		this.byPage = Collections.unmodifiableMap(pageMap);
+
+		Set<Integer> pageSet = TextStripper.getPages(attributes);
+		this.pages = pageSet == null ? null : Collections.unmodifiableSet(pageSet);
+	}
+
+	/**
+	 * @return alle Attribute in der Reihenfolge des Templates
+	 */
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @param page
+	 * 			Seitenzahl
+	 * @return Attribute der Seite, ggf. eine leere Liste
+	 */
+	public List<Attribute> getAttributes(int page) {
+		List<Attribute> ret = byPage.get(page);
+		return ret == null ? Collections.<Attribute>emptyList() : ret;
+	}
+
+	/**
+	 * @return sortierte Seitenzahlen, die im Template vorkommen, oder
+	 * <code>null</code>, wenn ein Attribut keine Seitenzahl hat und daher
+	 * alle Seiten benötigt werden
+	 */
+	public Set<Integer> getPages() {
+		return pages;
+	}
+
+	/**
+	 * Ankertexte sind Texte, die in allen Beispieldokumenten des Templates an
+	 * derselben Position standen. Sie dienen der Zuordnung eines Dokuments zu
+	 * einem Template und werden als {@link Attribute} geführt, dessen Name
+	 * der Ankertext ist.
+	 * @return Ankertexte, leer bei Templates ohne Anker
+	 */
+	public List<Attribute> getAnchors() {
+		return anchors;
+	}
+}
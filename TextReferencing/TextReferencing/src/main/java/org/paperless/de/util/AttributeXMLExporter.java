@@ -18,7 +18,8 @@ import org.paperless.de.parser.PdfString;
  * <ol>
  * <li>Angabe der Zieldatei im Konstruktor. Für jede Zieldatei muss eine neue
  * Instanz erstellt werden.</li>
- * <li>für jedes Attribut wird {@link #writeAttribute} gerufen.</li>
+ * <li>für jedes Attribut wird {@link #writeAttribute} gerufen, optional
+ * für jeden Ankertext {@link #writeAnchor}.</li>
  * <li>am Ende der Ausgabe muss {@link #close()} aufegerufen werden, damit alle
  * XML-Tags beendet und die I/O-Streams geschlossen werden können.</li>
  * </ol>
@@ -26,6 +27,12 @@ import org.paperless.de.parser.PdfString;
  */
 public class AttributeXMLExporter implements Closeable {
 	
+	/**
+	 * Version des Templateformats. Ab Version 2 ist y-end wie y-start vom
+	 * oberen Seitenrand gemessen.
+	 */
+	public static final int FORMAT_VERSION = 2;
+	
 	/**
 	 * benutzter XML-Writer
 	 */
@@ -68,6 +75,7 @@ public class AttributeXMLExporter implements Closeable {
 		
 		xml.writeStartDocument();
 		xml.writeStartElement("template");
+		xml.writeAttribute("version", "" + FORMAT_VERSION);
 	}
 	
 	/**
@@ -100,6 +108,35 @@ public class AttributeXMLExporter implements Closeable {
 		xml.writeEndElement();
 	}
 	
+	/**
+	 * Schreiben eines Ankertextes in den XML-Baum, s.
+	 * {@link AttributePlan#getAnchors()}
+	 * @param anchor
+	 * 			Text, der in allen Beispieldokumenten an derselben Position
+	 * 			stand
+	 * @throws XMLStreamException
+	 * 			Fehler beim Schreiben des Ankers in die XML-Datei
+	 * @throws IOException
+	 * 			Fehler beim Schreiben in die Datei oder der Stream wurde
+	 * 			bereits geschlossen
+	 */
+	public void writeAnchor(PdfString anchor) throws XMLStreamException, IOException {
+		if (closed) {
+			throw new IOException("This XML-Exporter has already been closed");
+		}
+		
+		xml.writeStartElement("anchor");
+		
+		writeElement("text", anchor.getText().trim());
+		writeElement("page", anchor.getPageNum());
+		writeElement("x-start", anchor.getFirstX());
+		writeElement("y-start", anchor.getFirstY());
+		writeElement("x-end", anchor.getLastX());
+		writeElement("y-end", anchor.getLastY());
+		
+		xml.writeEndElement();
+	}
+	
 	/**
 	 * Beendet den XML-Baum und schließt die Datei-Streams
 	 */
@@ -0,0 +1,119 @@
+package org.paperless.de.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Liest CSV-Dateien, wie sie vom {@link CsvWriter} geschrieben werden.
+ * Werte in Anführungszeichen dürfen Trennzeichen, verdoppelte
+ * Anführungszeichen und Zeilenumbrüche enthalten. Das abschließende
+ * Trennzeichen einer Zeile erzeugt keinen zusätzlichen leeren Wert.
+ *
+ * @author nba
+ */
+public class CsvReader implements Closeable {
+
+	/**
+	 * Puffergröße des Readers in Zeichen
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * darunterliegender BufferedReader
+	 */
+	private final BufferedReader br;
+
+	/**
+	 * Konstruktor, öffnet die Datei
+	 * @param file
+	 * 			CSV-Datei
+	 * @throws IOException
+	 * 			Fehler beim Öffnen der Datei
+	 */
+	public CsvReader(File file) throws IOException {
+		br = new BufferedReader(new FileReader(file), BUFFER_SIZE);
+	}
+
+	/**
+	 * Liest die nächste Zeile
+	 * @return Werte der Zeile oder <code>null</code> am Dateiende
+	 * @throws IOException
+	 * 			Fehler beim Lesen oder nicht abgeschlossener Wert in
+	 * 			Anführungszeichen
+	 */
+	public List<String> readRow() throws IOException {
+		int ch = br.read();
+		if (ch < 0) {
+			return null;
+		}
+
+		List<String> ret = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		//gibt an, ob seit dem letzten Trennzeichen etwas gelesen wurde
+		boolean open = false;
+		while (ch >= 0) {
+			if (ch == '"' && !open) {
+				open = true;
+				readQuoted(value);
+			} else if (ch == CsvWriter.SEPARATOR) {
+				ret.add(value.toString());
+				value.setLength(0);
+				open = false;
+			} else if (ch == '\r' || ch == '\n') {
+				if (ch == '\r') {
+					br.mark(1);
+					if (br.read() != '\n') {
+						br.reset();
+					}
+				}
+				break;
+			} else {
+				open = true;
+				value.append((char) ch);
+			}
+			ch = br.read();
+		}
+		if (open) {
+			ret.add(value.toString());
+		}
+		return ret;
+	}
+
+	/**
+	 * Liest einen Wert in Anführungszeichen bis zum schließenden
+	 * Anführungszeichen
+	 * @param value
+	 * 			Ziel für den gelesenen Wert
+	 * @throws IOException
+	 * 			Fehler beim Lesen oder Dateiende vor dem schließenden
+	 * 			Anführungszeichen
+	 */
+	private void readQuoted(StringBuilder value) throws IOException {
+		while (true) {
+			int ch = br.read();
+			if (ch < 0) {
+				throw new IOException("Unerwartetes Dateiende in einem Wert in Anführungszeichen");
+			}
+			if (ch == '"') {
+				br.mark(1);
+				if (br.read() != '"') {
+					br.reset();
+					return;
+				}
+			}
+			value.append((char) ch);
+		}
+	}
+
+	/**
+	 * Schließt die Datei
+	 */
+	public void close() throws IOException {
+		br.close();
+	}
+}
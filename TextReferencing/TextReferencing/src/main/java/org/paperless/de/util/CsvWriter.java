@@ -0,0 +1,171 @@
+package org.paperless.de.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Streamender Writer für CSV-Dateien mit Semikolon als Trennzeichen. Jede
+ * Zeile wird sofort in den Puffer geschrieben, der Puffer wird nach einer
+ * festen Anzahl Zeilen in die Datei geleert. Nutzung:
+ * <ol>
+ * <li>Angabe der Zieldatei oder eines geöffneten Writers im Konstruktor.</li>
+ * <li>für jede Zeile wird {@link #writeRow} gerufen.</li>
+ * <li>am Ende der Ausgabe muss {@link #close()} aufgerufen werden.</li>
+ * </ol>
+ * @author nba
+ */
+public class CsvWriter implements Closeable {
+
+	/**
+	 * Trennzeichen zwischen zwei Werten
+	 */
+	public static final char SEPARATOR = ';';
+
+	/**
+	 * Anzahl Zeilen, nach denen der Puffer in die Datei geleert wird
+	 */
+	private static final int FLUSH_INTERVAL = 100;
+
+	/**
+	 * Puffergröße des Writers in Zeichen
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Zeilenumbruch der Plattform wie bei {@link BufferedWriter#newLine()}
+	 */
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	/**
+	 * darunterliegender gepufferter Writer
+	 */
+	private Writer bw;
+
+	/**
+	 * Anzahl der seit dem letzten Leeren des Puffers geschriebenen Zeilen
+	 */
+	private int unflushedRows = 0;
+
+	/**
+	 * gibt an, ob der Writer bereits geschlossen wurde
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Konstruktor, öffnet die Zieldatei. Eine existierende Datei wird
+	 * überschrieben.
+	 * @param file
+	 * 			CSV-Ausgabedatei
+	 * @throws IOException
+	 * 			Fehler beim Öffnen der Datei
+	 */
+	public CsvWriter(File file) throws IOException {
+		this(new BufferedWriter(new FileWriter(file), BUFFER_SIZE));
+	}
+
+	/**
+	 * Konstruktor für einen bereits geöffneten Writer, der mit
+	 * {@link #close()} geschlossen wird
+	 * @param out
+	 * 			gepufferter Writer
+	 */
+	public CsvWriter(Writer out) {
+		bw = out;
+	}
+
+	/**
+	 * Schreibt eine Zeile. Jeder Wert wird mit einem abschließenden
+	 * {@link #SEPARATOR Trennzeichen} geschrieben und bei Bedarf maskiert.
+	 * @param values
+	 * 			Werte der Zeile
+	 * @throws IOException
+	 * 			Fehler beim Schreiben oder der Writer wurde bereits geschlossen
+	 */
+	public void writeRow(List<String> values) throws IOException {
+		if (closed) {
+			throw new IOException("This CSV-Writer has already been closed");
+		}
+
+		for (String value : values) {
+			writeValue(value);
+			bw.write(SEPARATOR);
+		}
+		bw.write(LINE_SEPARATOR);
+
+		if (++unflushedRows >= FLUSH_INTERVAL) {
+			flush();
+		}
+	}
+
+	/**
+	 * Leert den Puffer in die Datei
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public void flush() throws IOException {
+		bw.flush();
+		unflushedRows = 0;
+	}
+
+	/**
+	 * Schreibt die restlichen Zeilen und schließt die Datei
+	 */
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			bw.close();
+		}
+	}
+
+	/**
+	 * Schreibt einen einzelnen Wert. Enthält der Wert Trennzeichen,
+	 * Anführungszeichen oder Zeilenumbrüche, wird er in Anführungszeichen
+	 * gesetzt und enthaltene Anführungszeichen werden verdoppelt.
+	 * @param value
+	 * 			zu schreibender Wert, <code>null</code> wird als leerer Wert
+	 * 			geschrieben
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	private void writeValue(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (!needsQuoting(value)) {
+			bw.write(value);
+			return;
+		}
+
+		bw.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == '"') {
+				bw.write('"');
+			}
+			bw.write(ch);
+		}
+		bw.write('"');
+	}
+
+	/**
+	 * prüft, ob ein Wert maskiert werden muss
+	 * @param value
+	 * 			zu prüfender Wert
+	 * @return <code>true</code>, wenn der Wert in Anführungszeichen gesetzt
+	 * 			werden muss
+	 */
+	private static boolean needsQuoting(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == SEPARATOR || ch == '"' || ch == '\n' || ch == '\r') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,274 @@
+package org.paperless.de.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Lädt PDF-Dokumente mit einer festgelegten Speichernutzung. PDFBox puffert
+ * ein Dokument standardmäßig vollständig im Heap, bei sehr großen Dokumenten
+ * kann stattdessen in temporäre Dateien ausgelagert werden. Die Datei selbst
+ * wird entweder über den gepufferten Dateizugriff von PDFBox oder über eine
+ * Speicherabbildung gelesen, s. {@link InputMode}. Instanzen sind
+ * unveränderlich und können aus mehreren Threads genutzt werden.
+ *
+ * @author nba
+ */
+public class DocumentLoader {
+
+	/**
+	 * Art der Speichernutzung beim Laden eines Dokuments
+	 */
+	public enum MemoryMode {
+		/**
+		 * nur Hauptspeicher (PDFBox-Standard)
+		 */
+		HEAP,
+		/**
+		 * nur temporäre Dateien
+		 */
+		TEMP_FILE,
+		/**
+		 * Hauptspeicher bis zur Obergrenze, danach temporäre Dateien
+		 */
+		MIXED
+	}
+
+	/**
+	 * Art des Lesezugriffs auf die PDF-Datei
+	 */
+	public enum InputMode {
+		/**
+		 * gepufferter Dateizugriff von PDFBox, kopiert gelesene Blöcke in
+		 * den Heap (PDFBox-Standard)
+		 */
+		FILE,
+		/**
+		 * Speicherabbildung über {@link MappedFileReader}, nur gelesene
+		 * Seiten der Datei werden vom Betriebssystem geladen. Für Dateien
+		 * über 2 GB wird {@link #FILE} genutzt.
+		 */
+		MAPPED
+	}
+
+	/**
+	 * gewählte Speichernutzung
+	 */
+	private final MemoryMode mode;
+
+	/**
+	 * Obergrenze für den Hauptspeicher je Dokument in Bytes, nur für
+	 * {@link MemoryMode#MIXED}
+	 */
+	private final long maxMainMemoryBytes;
+
+	/**
+	 * Verzeichnis für temporäre Dateien oder <code>null</code> für das
+	 * Standardverzeichnis der JVM
+	 */
+	private final File tempDir;
+
+	/**
+	 * gewählter Lesezugriff
+	 */
+	private final InputMode input;
+
+	/**
+	 * Standardkonstruktor, lädt Dokumente vollständig in den Hauptspeicher
+	 */
+	public DocumentLoader() {
+		this(MemoryMode.HEAP, -1, null);
+	}
+
+	/**
+	 * Konstruktor mit dem Standardzugriff {@link InputMode#FILE}
+	 * @param mode
+	 * 			Art der Speichernutzung
+	 * @param maxMainMemoryBytes
+	 * 			Obergrenze für den Hauptspeicher je Dokument in Bytes, wird
+	 * 			nur bei {@link MemoryMode#MIXED} genutzt
+	 * @param tempDir
+	 * 			Verzeichnis für temporäre Dateien oder <code>null</code>
+	 */
+	public DocumentLoader(MemoryMode mode, long maxMainMemoryBytes, File tempDir) {
+		this(mode, maxMainMemoryBytes, tempDir, InputMode.FILE);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param mode
+	 * 			Art der Speichernutzung
+	 * @param maxMainMemoryBytes
+	 * 			Obergrenze für den Hauptspeicher je Dokument in Bytes, wird
+	 * 			nur bei {@link MemoryMode#MIXED} genutzt
+	 * @param tempDir
+	 * 			Verzeichnis für temporäre Dateien oder <code>null</code>
+	 * @param input
+	 * 			Art des Lesezugriffs
+	 */
+	public DocumentLoader(MemoryMode mode, long maxMainMemoryBytes, File tempDir, InputMode input) {
+		this.mode = mode;
+		this.maxMainMemoryBytes = maxMainMemoryBytes;
+		this.tempDir = tempDir;
+		this.input = input;
+	}
+
+	/**
+	 * Erstellt einen Loader aus einer Kommandozeilenangabe.
+	 * @param spec
+	 * 			<code>heap</code>, <code>temp</code> oder
+	 * 			<code>mixed:Größe</code>, wobei die Größe in Bytes mit den
+	 * 			optionalen Suffixen K, M oder G angegeben wird, z.B.
+	 * 			<code>mixed:64M</code>. <code>null</code> entspricht
+	 * 			<code>heap</code>.
+	 * @param tempDir
+	 * 			Verzeichnis für temporäre Dateien oder <code>null</code>
+	 * @return konfigurierter Loader
+	 * @throws IllegalArgumentException
+	 * 			ungültige Angabe
+	 */
+	public static DocumentLoader parse(String spec, File tempDir) throws IllegalArgumentException {
+		return parse(spec, tempDir, null);
+	}
+
+	/**
+	 * Erstellt einen Loader aus Kommandozeilenangaben.
+	 * @param spec
+	 * 			Speichernutzung, s. {@link #parse(String, File)}
+	 * @param tempDir
+	 * 			Verzeichnis für temporäre Dateien oder <code>null</code>
+	 * @param inputSpec
+	 * 			Lesezugriff <code>file</code> oder <code>mmap</code>,
+	 * 			<code>null</code> entspricht <code>file</code>
+	 * @return konfigurierter Loader
+	 * @throws IllegalArgumentException
+	 * 			ungültige Angabe
+	 */
+	public static DocumentLoader parse(String spec, File tempDir, String inputSpec) throws IllegalArgumentException {
+		if (tempDir != null && !tempDir.isDirectory()) {
+			throw new IllegalArgumentException(tempDir.getName() + " ist kein gültiges Verzeichnis.");
+		}
+		InputMode input;
+		if (inputSpec == null || inputSpec.equals("file")) {
+			input = InputMode.FILE;
+		} else if (inputSpec.equals("mmap")) {
+			input = InputMode.MAPPED;
+		} else {
+			throw new IllegalArgumentException("Ungültiger Lesezugriff " + inputSpec + ", erlaubt sind file oder mmap.");
+		}
+		if (spec == null || spec.equals("heap")) {
+			return new DocumentLoader(MemoryMode.HEAP, -1, tempDir, input);
+		}
+		if (spec.equals("temp")) {
+			return new DocumentLoader(MemoryMode.TEMP_FILE, -1, tempDir, input);
+		}
+		if (spec.startsWith("mixed:")) {
+			long bytes = parseSize(spec.substring("mixed:".length()));
+			return new DocumentLoader(MemoryMode.MIXED, bytes, tempDir, input);
+		}
+		throw new IllegalArgumentException("Ungültige Speichernutzung " + spec
+				+ ", erlaubt sind heap, temp oder mixed:Größe.");
+	}
+
+	/**
+	 * Lädt ein PDF-Dokument mit der festgelegten Speichernutzung und dem
+	 * festgelegten Lesezugriff
+	 * @param file
+	 * 			PDF-Datei
+	 * @return geladenes Dokument, muss vom Aufrufer geschlossen werden
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 */
+	public PDDocument load(File file) throws IOException {
+		if (input == InputMode.MAPPED && MappedFileReader.isMappable(file)) {
+			return load(new MappedFileReader(file));
+		}
+		return PDDocument.load(file, createSetting());
+	}
+
+	/**
+	 * Lädt ein PDF-Dokument aus einem eigenen Lesezugriff, wie
+	 * {@link PDDocument#load(File, MemoryUsageSetting)} es für den
+	 * Dateizugriff von PDFBox tut
+	 * @param source
+	 * 			Lesezugriff, wird mit dem Dokument geschlossen
+	 * @return geladenes Dokument
+	 * @throws IOException
+	 * 			Fehler beim Parsen
+	 */
+	private PDDocument load(RandomAccessRead source) throws IOException {
+		ScratchFile scratch = null;
+		try {
+			scratch = new ScratchFile(createSetting());
+			PDFParser parser = new PDFParser(source, "", scratch);
+			parser.parse();
+			return parser.getPDDocument();
+		} catch (IOException e) {
+			IOUtils.closeQuietly(scratch);
+			IOUtils.closeQuietly(source);
+			throw e;
+		}
+	}
+
+	/**
+	 * Erstellt für jedes Dokument eine eigene Einstellung, da PDFBox daraus
+	 * je Dokument einen eigenen Zwischenspeicher anlegt.
+	 * @return Speichereinstellung für PDFBox
+	 */
+	private MemoryUsageSetting createSetting() {
+		MemoryUsageSetting setting;
+		switch (mode) {
+		case TEMP_FILE:
+			setting = MemoryUsageSetting.setupTempFileOnly();
+			break;
+		case MIXED:
+			setting = MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+			break;
+		default:
+			setting = MemoryUsageSetting.setupMainMemoryOnly();
+			break;
+		}
+		if (tempDir != null) {
+			setting.setTempDir(tempDir);
+		}
+		return setting;
+	}
+
+	/**
+	 * liest eine Größenangabe in Bytes
+	 * @param size
+	 * 			Ganzzahl mit optionalem Suffix K, M oder G
+	 * @return Größe in Bytes
+	 * @throws IllegalArgumentException
+	 * 			ungültige Angabe
+	 */
+	private static long parseSize(String size) throws IllegalArgumentException {
+		long factor = 1;
+		String number = size.trim().toUpperCase();
+		if (number.endsWith("K")) {
+			factor = 1024L;
+		} else if (number.endsWith("M")) {
+			factor = 1024L * 1024;
+		} else if (number.endsWith("G")) {
+			factor = 1024L * 1024 * 1024;
+		}
+		if (factor > 1) {
+			number = number.substring(0, number.length() - 1);
+		}
+		try {
+			long bytes = Long.parseLong(number) * factor;
+			if (bytes < 0) {
+				throw new IllegalArgumentException("Die Speichergrenze darf nicht negativ sein.");
+			}
+			return bytes;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Ungültige Speichergrenze " + size);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.paperless.de.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hilfsmethoden zur Berechnung von SHA-256-Prüfsummen für Dateien und
+ * Zeichenketten
+ *
+ * @author nba
+ */
+public class Hashes {
+
+	/**
+	 * Puffergröße beim Lesen von Dateien
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * keine Instanzen
+	 */
+	private Hashes() {
+	}
+
+	/**
+	 * Berechnet die Prüfsumme über den Inhalt einer Datei
+	 * @param file
+	 * 			zu lesende Datei
+	 * @return SHA-256-Prüfsumme als Hexadezimalstring
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 */
+	public static String sha256(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Berechnet die Prüfsumme über eine Zeichenkette in UTF-8
+	 * @param text
+	 * 			Zeichenkette
+	 * @return SHA-256-Prüfsumme als Hexadezimalstring
+	 */
+	public static String sha256(String text) {
+		return toHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @return neue SHA-256-Instanz
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//SHA-256 muss von jeder JVM unterstützt werden
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return Hexadezimaldarstellung der Bytes
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder ret = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			ret.append(Character.forDigit((b >> 4) & 0xF, 16));
+			ret.append(Character.forDigit(b & 0xF, 16));
+		}
+		return ret.toString();
+	}
+}
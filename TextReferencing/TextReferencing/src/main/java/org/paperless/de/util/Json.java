@@ -0,0 +1,68 @@
+package org.paperless.de.util;
+
+/**
+ * Hilfsmethoden zum Schreiben von JSON ohne zusätzliche Bibliothek
+ *
+ * @author nba
+ */
+public class Json {
+
+	/**
+	 * keine Instanzen
+	 */
+	private Json() {
+	}
+
+	/**
+	 * Maskiert eine Zeichenkette als JSON-String
+	 * @param value
+	 * 			Zeichenkette oder <code>null</code>
+	 * @return JSON-String inkl. Anführungszeichen oder <code>null</code>
+	 */
+	public static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder ret = new StringBuilder(value.length() + 2);
+		appendQuoted(ret, value);
+		return ret.toString();
+	}
+
+	/**
+	 * Hängt eine Zeichenkette als JSON-String an
+	 * @param sb
+	 * 			Ziel
+	 * @param value
+	 * 			Zeichenkette, darf nicht <code>null</code> sein
+	 */
+	public static void appendQuoted(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			switch (ch) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (ch < 0x20) {
+					sb.append(String.format("\\u%04x", (int) ch));
+				} else {
+					sb.append(ch);
+				}
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,201 @@
+package org.paperless.de.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Verzeichnis der bereits verarbeiteten PDF-Dateien eines Laufs. Für jede
+ * Datei werden Name, Größe, Änderungszeitpunkt und Prüfsumme des Inhalts
+ * gespeichert, dazu die Version des genutzten Templates. Ein späterer Lauf
+ * muss damit nur neue oder geänderte Dateien verarbeiten.</p>
+ * <p>Die Prüfsumme wird nur neu berechnet, wenn sich Größe oder
+ * Änderungszeitpunkt geändert haben. Eine nur berührte Datei mit gleichem
+ * Inhalt gilt als unverändert.</p>
+ * <p>Format der Datei:</p>
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * UTF     Templateversion
+ * int     Anzahl Dateien
+ * je Datei: UTF Name, long Größe, long Änderungszeitpunkt, UTF Prüfsumme
+ * </pre>
+ *
+ * @author nba
+ */
+public class Manifest {
+
+	/**
+	 * Dateiendung des Manifests, wird an den Namen der Ausgabedatei angehängt
+	 */
+	public static final String SUFFIX = ".manifest";
+
+	/**
+	 * Kennung am Dateianfang
+	 */
+	private static final int MAGIC = 0x504D4631;
+
+	/**
+	 * Version des Dateiformats
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Stand einer verarbeiteten Datei
+	 */
+	public static class Entry {
+
+		/**
+		 * Dateiname im Eingabeverzeichnis
+		 */
+		public final String name;
+
+		/**
+		 * Dateigröße in Bytes
+		 */
+		public final long size;
+
+		/**
+		 * Änderungszeitpunkt in Millisekunden
+		 */
+		public final long modified;
+
+		/**
+		 * SHA-256 des Dateiinhalts
+		 */
+		public final String hash;
+
+		/**
+		 * Konstruktor
+		 */
+		public Entry(String name, long size, long modified, String hash) {
+			this.name = name;
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Version des Templates, mit dem die Dateien verarbeitet wurden
+	 */
+	private final String templateVersion;
+
+	/**
+	 * Einträge nach Dateinamen
+	 */
+	private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+	/**
+	 * Konstruktor für ein leeres Manifest
+	 * @param templateVersion
+	 * 			Version des Templates, z.B. eine Prüfsumme über Template und
+	 * 			Einstellungen
+	 */
+	public Manifest(String templateVersion) {
+		this.templateVersion = templateVersion;
+	}
+
+	/**
+	 * @return Version des Templates, mit dem die Dateien verarbeitet wurden
+	 */
+	public String getTemplateVersion() {
+		return templateVersion;
+	}
+
+	/**
+	 * @param name
+	 * 			Dateiname
+	 * @return Eintrag der Datei oder <code>null</code>
+	 */
+	public Entry get(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Setzt den Eintrag einer Datei
+	 * @param entry
+	 * 			neuer Eintrag
+	 */
+	public void put(Entry entry) {
+		entries.put(entry.name, entry);
+	}
+
+	/**
+	 * Ermittelt den aktuellen Stand einer Datei. Stimmen Größe und
+	 * Änderungszeitpunkt mit dem bisherigen Eintrag überein, wird dieser
+	 * ohne erneutes Lesen der Datei übernommen.
+	 * @param file
+	 * 			PDF-Datei
+	 * @param previous
+	 * 			bisheriger Eintrag oder <code>null</code>
+	 * @return aktueller Eintrag
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 */
+	public static Entry describe(File file, Entry previous) throws IOException {
+		long size = file.length();
+		long modified = file.lastModified();
+		if (previous != null && previous.size == size && previous.modified == modified) {
+			return previous;
+		}
+		return new Entry(file.getName(), size, modified, Hashes.sha256(file));
+	}
+
+	/**
+	 * Liest ein Manifest
+	 * @param file
+	 * 			Manifestdatei
+	 * @return Manifest oder <code>null</code>, wenn die Datei fehlt oder
+	 * 			ungültig ist
+	 */
+	public static Manifest read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			Manifest ret = new Manifest(in.readUTF());
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				ret.put(new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readUTF()));
+			}
+			return ret;
+		} catch (IOException e) {
+			System.out.println("[WARN] Manifest " + file.getName() + " konnte nicht gelesen werden: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Schreibt das Manifest über eine temporäre Datei, s. {@link AtomicFiles}
+	 * @param file
+	 * 			Manifestdatei
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public void write(File file) throws IOException {
+		AtomicFiles.write(file, new AtomicFiles.Content() {
+
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(templateVersion);
+				out.writeInt(entries.size());
+				for (Entry entry : entries.values()) {
+					out.writeUTF(entry.name);
+					out.writeLong(entry.size);
+					out.writeLong(entry.modified);
+					out.writeUTF(entry.hash);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,160 @@
+package org.paperless.de.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+
+/**
+ * Lesezugriff für PDFBox auf eine per {@link FileChannel#map} in den
+ * Speicher abgebildete Datei. Im Gegensatz zum Standardzugriff von PDFBox
+ * werden keine Dateiblöcke in den Heap kopiert, das Betriebssystem lädt nur
+ * die tatsächlich gelesenen Seiten der Datei. Die Abbildung wird erst mit
+ * der Garbage Collection freigegeben, nicht schon beim Schließen.
+ * Abbildbar sind Dateien bis {@link Integer#MAX_VALUE} Bytes, s.
+ * {@link #isMappable}.
+ *
+ * @author nba
+ */
+public class MappedFileReader implements RandomAccessRead {
+
+	/**
+	 * abgebildete Datei, <code>null</code> nach dem Schließen
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Dateigröße in Bytes
+	 */
+	private final int length;
+
+	/**
+	 * Konstruktor, bildet die Datei ab
+	 * @param file
+	 * 			Datei
+	 * @throws IOException
+	 * 			Fehler beim Öffnen oder die Datei ist zu groß
+	 */
+	public MappedFileReader(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file.getName() + " ist zu groß für eine Speicherabbildung");
+			}
+			//die Abbildung bleibt nach dem Schließen des Kanals gültig
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			this.length = (int) size;
+		}
+	}
+
+	/**
+	 * @param file
+	 * 			Datei
+	 * @return <code>true</code>, wenn die Datei abgebildet werden kann
+	 */
+	public static boolean isMappable(File file) {
+		return file.length() <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return abgebildete Datei
+	 * @throws IOException
+	 * 			der Zugriff wurde bereits geschlossen
+	 */
+	private ByteBuffer buffer() throws IOException {
+		if (buffer == null) {
+			throw new IOException("MappedFileReader already closed");
+		}
+		return buffer;
+	}
+
+	@Override
+	public int read() throws IOException {
+		ByteBuffer buf = buffer();
+		return buf.hasRemaining() ? buf.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		ByteBuffer buf = buffer();
+		if (len == 0) {
+			return 0;
+		}
+		int count = Math.min(len, buf.remaining());
+		if (count == 0) {
+			return -1;
+		}
+		buf.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public long getPosition() throws IOException {
+		return buffer().position();
+	}
+
+	@Override
+	public void seek(long position) throws IOException {
+		if (position < 0) {
+			throw new IOException("Invalid position " + position);
+		}
+		//hinter dem Dateiende liefert read() wie bei PDFBox -1
+		buffer().position((int) Math.min(position, length));
+	}
+
+	@Override
+	public long length() throws IOException {
+		return length;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return buffer == null;
+	}
+
+	@Override
+	public int peek() throws IOException {
+		ByteBuffer buf = buffer();
+		return buf.hasRemaining() ? buf.get(buf.position()) & 0xff : -1;
+	}
+
+	@Override
+	public void rewind(int bytes) throws IOException {
+		seek(getPosition() - bytes);
+	}
+
+	@Override
+	public byte[] readFully(int len) throws IOException {
+		ByteBuffer buf = buffer();
+		if (buf.remaining() < len) {
+			throw new EOFException("Premature end of file");
+		}
+		byte[] ret = new byte[len];
+		buf.get(ret);
+		return ret;
+	}
+
+	@Override
+	public boolean isEOF() throws IOException {
+		return !buffer().hasRemaining();
+	}
+
+	@Override
+	public int available() throws IOException {
+		return buffer().remaining();
+	}
+
+	@Override
+	public void close() {
+		buffer = null;
+	}
+}
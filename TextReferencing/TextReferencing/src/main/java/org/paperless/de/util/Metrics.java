@@ -0,0 +1,401 @@
+package org.paperless.de.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Sammelt Laufzeitmetriken der Verarbeitung: Latenzen je
+ * Verarbeitungsschritt als Histogramm, Anzahl Dokumente und Seiten, Treffer
+ * und "N/A" je Attribut sowie den maximalen Heapverbrauch der JVM. Alle
+ * Methoden können aus mehreren Threads aufgerufen werden.</p>
+ * <p>Mit {@link #write(String)} werden die Metriken als JSON-Zusammenfassung
+ * (<code>&lt;prefix&gt;.json</code>) und im Textformat von Prometheus
+ * (<code>&lt;prefix&gt;.prom</code>) geschrieben, z.B. für den
+ * Textfile-Collector des node_exporter.</p>
+ *
+ * @author nba
+ */
+public class Metrics {
+
+	/**
+	 * Laden des PDF-Dokuments
+	 */
+	public static final String LOAD = "load";
+
+	/**
+	 * Extraktion der Texte mit dem TextStripper
+	 */
+	public static final String STRIP = "strip";
+
+	/**
+	 * Abgleich der Texte mit den Attributen bzw. den anderen Dokumenten
+	 */
+	public static final String MATCH = "match";
+
+	/**
+	 * Schreiben der Ausgabe
+	 */
+	public static final String OUTPUT = "output";
+
+	/**
+	 * Lesen oder Schreiben des Layout-Caches
+	 */
+	public static final String CACHE = "cache";
+
+	/**
+	 * gesamte Verarbeitung eines Dokuments
+	 */
+	public static final String DOCUMENT = "document";
+
+	/**
+	 * Obergrenzen der Histogrammklassen in Sekunden
+	 */
+	private static final double[] BUCKETS = {
+			0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+	/**
+	 * Präfix der Metriknamen im Prometheus-Format
+	 */
+	private static final String NAMESPACE = "textreferencing_";
+
+	/**
+	 * Latenzhistogramm eines Verarbeitungsschritts
+	 */
+	private static class Histogram {
+
+		/**
+		 * Anzahl Messungen je Klasse, nicht kumuliert. Der letzte Eintrag
+		 * zählt die Messungen oberhalb der größten Klasse.
+		 */
+		final long[] counts = new long[BUCKETS.length + 1];
+
+		/**
+		 * Anzahl aller Messungen
+		 */
+		long count;
+
+		/**
+		 * Summe aller Messungen in Sekunden
+		 */
+		double sum;
+
+		/**
+		 * längste Messung in Sekunden
+		 */
+		double max;
+
+		/**
+		 * Erfasst eine Messung in ihrer Klasse und den Summen
+		 * @param seconds
+		 * 			Dauer in Sekunden
+		 */
+		void add(double seconds) {
+			int i = 0;
+			while (i < BUCKETS.length && seconds > BUCKETS[i]) {
+				i++;
+			}
+			counts[i]++;
+			count++;
+			sum += seconds;
+			max = Math.max(max, seconds);
+		}
+	}
+
+	/**
+	 * Startzeitpunkt für die Durchsatzberechnung
+	 */
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * Histogramme nach Verarbeitungsschritt in Reihenfolge des ersten Auftretens
+	 */
+	private final Map<String, Histogram> stages = new LinkedHashMap<String, Histogram>();
+
+	/**
+	 * Treffer und "N/A" je Attribut
+	 */
+	private final Map<String, long[]> attributes = new LinkedHashMap<String, long[]>();
+
+	/**
+	 * Anzahl fertig verarbeiteter Dokumente
+	 */
+	private long documents;
+
+	/**
+	 * Summe der Seiten aller verarbeiteten Dokumente
+	 */
+	private long pages;
+
+	/**
+	 * Anzahl fehlgeschlagener Dokumente
+	 */
+	private long failures;
+
+	/**
+	 * Hintergrundthread für das regelmäßige Schreiben oder <code>null</code>
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Erfasst die Dauer eines Verarbeitungsschritts
+	 * @param stage
+	 * 			Name des Schritts, z.B. {@link #LOAD}
+	 * @param startNanos
+	 * 			Startzeitpunkt aus {@link System#nanoTime()}
+	 */
+	public void record(String stage, long startNanos) {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		synchronized (this) {
+			Histogram histogram = stages.get(stage);
+			if (histogram == null) {
+				histogram = new Histogram();
+				stages.put(stage, histogram);
+			}
+			histogram.add(seconds);
+		}
+	}
+
+	/**
+	 * Zählt ein fertig verarbeitetes Dokument
+	 * @param pageCount
+	 * 			Anzahl Seiten des Dokuments
+	 */
+	public synchronized void addDocument(int pageCount) {
+		documents++;
+		pages += pageCount;
+	}
+
+	/**
+	 * Zählt ein Dokument, das nicht verarbeitet werden konnte
+	 */
+	public synchronized void addFailure() {
+		failures++;
+	}
+
+	/**
+	 * Zählt die Attributwerte eines Dokuments
+	 * @param values
+	 * 			Mapping Attributname auf Attributwert, "N/A" gilt als
+	 * 			nicht gefunden
+	 */
+	public synchronized void addValues(Map<String, String> values) {
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			long[] counts = attributes.get(entry.getKey());
+			if (counts == null) {
+				counts = new long[2];
+				attributes.put(entry.getKey(), counts);
+			}
+			counts["N/A".equals(entry.getValue()) ? 1 : 0]++;
+		}
+	}
+
+	/**
+	 * Schreibt die Metriken regelmäßig aus einem Hintergrundthread, für
+	 * langlaufende Modi. Der Thread hält die JVM nicht am Leben.
+	 * @param prefix
+	 * 			Pfadpräfix der Ausgabedateien
+	 * @param seconds
+	 * 			Intervall in Sekunden
+	 */
+	public synchronized void startPeriodicWrite(final String prefix, long seconds) {
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					write(prefix);
+				} catch (IOException e) {
+					System.out.println("[WARN] Metriken konnten nicht geschrieben werden: " + e.getMessage());
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Schreibt die JSON-Zusammenfassung und die Prometheus-Datei. Beide
+	 * Dateien werden über temporäre Dateien ersetzt, ein Leser sieht also nie
+	 * eine halb geschriebene Datei.
+	 * @param prefix
+	 * 			Pfadpräfix der Ausgabedateien
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	public void write(String prefix) throws IOException {
+		String json, prometheus;
+		synchronized (this) {
+			json = toJson();
+			prometheus = toPrometheus();
+		}
+		AtomicFiles.write(new File(prefix + ".json"), json);
+		AtomicFiles.write(new File(prefix + ".prom"), prometheus);
+	}
+
+	/**
+	 * @return Metriken als JSON-Objekt
+	 */
+	public synchronized String toJson() {
+		double elapsed = getElapsedSeconds();
+		StringBuilder ret = new StringBuilder();
+		ret.append("{\n");
+		ret.append("  \"elapsedSeconds\": ").append(format(elapsed)).append(",\n");
+		ret.append("  \"documents\": ").append(documents).append(",\n");
+		ret.append("  \"pages\": ").append(pages).append(",\n");
+		ret.append("  \"failures\": ").append(failures).append(",\n");
+		ret.append("  \"documentsPerSecond\": ").append(format(rate(documents, elapsed))).append(",\n");
+		ret.append("  \"pagesPerSecond\": ").append(format(rate(pages, elapsed))).append(",\n");
+		ret.append("  \"peakHeapBytes\": ").append(getPeakHeap()).append(",\n");
+
+		ret.append("  \"stages\": {");
+		boolean first = true;
+		for (Map.Entry<String, Histogram> entry : stages.entrySet()) {
+			Histogram h = entry.getValue();
+			ret.append(first ? "\n" : ",\n");
+			first = false;
+			ret.append("    ").append(Json.quote(entry.getKey())).append(": {");
+			ret.append("\"count\": ").append(h.count);
+			ret.append(", \"totalSeconds\": ").append(format(h.sum));
+			ret.append(", \"meanSeconds\": ").append(format(h.count == 0 ? 0 : h.sum / h.count));
+			ret.append(", \"maxSeconds\": ").append(format(h.max));
+			ret.append(", \"buckets\": {");
+			for (int i = 0; i < h.counts.length; i++) {
+				if (i > 0) {
+					ret.append(", ");
+				}
+				ret.append('"').append(i < BUCKETS.length ? format(BUCKETS[i]) : "+Inf").append("\": ").append(h.counts[i]);
+			}
+			ret.append("}}");
+		}
+		ret.append(first ? "},\n" : "\n  },\n");
+
+		ret.append("  \"attributes\": {");
+		first = true;
+		for (Map.Entry<String, long[]> entry : attributes.entrySet()) {
+			ret.append(first ? "\n" : ",\n");
+			first = false;
+			ret.append("    ").append(Json.quote(entry.getKey())).append(": {\"hits\": ").append(entry.getValue()[0])
+					.append(", \"notFound\": ").append(entry.getValue()[1]).append('}');
+		}
+		ret.append(first ? "}\n" : "\n  }\n");
+		ret.append("}\n");
+		return ret.toString();
+	}
+
+	/**
+	 * @return Metriken im Textformat von Prometheus
+	 */
+	public synchronized String toPrometheus() {
+		double elapsed = getElapsedSeconds();
+		StringBuilder ret = new StringBuilder();
+		gauge(ret, "elapsed_seconds", "Laufzeit seit dem Start", format(elapsed));
+		counter(ret, "documents_total", "verarbeitete Dokumente", documents);
+		counter(ret, "pages_total", "Seiten der verarbeiteten Dokumente", pages);
+		counter(ret, "failures_total", "fehlgeschlagene Dokumente", failures);
+		gauge(ret, "documents_per_second", "Dokumente je Sekunde seit dem Start", format(rate(documents, elapsed)));
+		gauge(ret, "pages_per_second", "Seiten je Sekunde seit dem Start", format(rate(pages, elapsed)));
+		gauge(ret, "heap_peak_bytes", "maximaler Heapverbrauch der JVM", Long.toString(getPeakHeap()));
+
+		String name = NAMESPACE + "stage_duration_seconds";
+		ret.append("# HELP ").append(name).append(" Dauer je Verarbeitungsschritt\n");
+		ret.append("# TYPE ").append(name).append(" histogram\n");
+		for (Map.Entry<String, Histogram> entry : stages.entrySet()) {
+			String stage = "stage=\"" + escapeLabel(entry.getKey()) + '"';
+			Histogram h = entry.getValue();
+			long cumulative = 0;
+			for (int i = 0; i < h.counts.length; i++) {
+				cumulative += h.counts[i];
+				ret.append(name).append("_bucket{").append(stage).append(",le=\"")
+						.append(i < BUCKETS.length ? format(BUCKETS[i]) : "+Inf").append("\"} ").append(cumulative).append('\n');
+			}
+			ret.append(name).append("_sum{").append(stage).append("} ").append(format(h.sum)).append('\n');
+			ret.append(name).append("_count{").append(stage).append("} ").append(h.count).append('\n');
+		}
+
+		name = NAMESPACE + "attribute_values_total";
+		ret.append("# HELP ").append(name).append(" Attributwerte je Attribut und Ergebnis\n");
+		ret.append("# TYPE ").append(name).append(" counter\n");
+		for (Map.Entry<String, long[]> entry : attributes.entrySet()) {
+			String attribute = "attribute=\"" + escapeLabel(entry.getKey()) + '"';
+			ret.append(name).append('{').append(attribute).append(",result=\"hit\"} ").append(entry.getValue()[0]).append('\n');
+			ret.append(name).append('{').append(attribute).append(",result=\"na\"} ").append(entry.getValue()[1]).append('\n');
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * schreibt eine Metrik vom Typ gauge im Prometheus-Format
+	 */
+	private static void gauge(StringBuilder out, String name, String help, String value) {
+		out.append("# HELP ").append(NAMESPACE).append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(NAMESPACE).append(name).append(" gauge\n");
+		out.append(NAMESPACE).append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * schreibt eine Metrik vom Typ counter im Prometheus-Format
+	 */
+	private static void counter(StringBuilder out, String name, String help, long value) {
+		out.append("# HELP ").append(NAMESPACE).append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(NAMESPACE).append(name).append(" counter\n");
+		out.append(NAMESPACE).append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * @return Sekunden seit dem Erzeugen der Metriken
+	 */
+	private double getElapsedSeconds() {
+		return (System.nanoTime() - startNanos) / 1e9;
+	}
+
+	/**
+	 * berechnet einen Durchsatz, 0 vor Ablauf messbarer Zeit
+	 */
+	private static double rate(long count, double seconds) {
+		return seconds > 0 ? count / seconds : 0;
+	}
+
+	/**
+	 * @return Summe der Spitzenwerte aller Heap-Speicherbereiche seit dem
+	 * 			Start der JVM in Bytes
+	 */
+	private static long getPeakHeap() {
+		long ret = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				ret += pool.getPeakUsage().getUsed();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * formatiert eine Gleitkommazahl unabhängig von der Locale
+	 */
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.6f", value);
+	}
+
+	/**
+	 * maskiert einen Labelwert im Prometheus-Format
+	 */
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
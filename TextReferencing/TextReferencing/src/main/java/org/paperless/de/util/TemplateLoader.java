@@ -0,0 +1,265 @@
+package org.paperless.de.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>Lädt XML-Templates, wie sie vom {@link AttributeXMLExporter} geschrieben
+ * werden, als {@link AttributePlan}.</p>
+ * <p>Neben der XML-Datei wird eine kompilierte Binärfassung
+ * (<code>&lt;template&gt;.xml.compiled</code>) abgelegt. Bei späteren
+ * Aufrufen wird diese gelesen, solange die SHA-256-Prüfsumme der XML-Datei
+ * unverändert ist. Größe und Änderungszeitpunkt genügen nicht, da z.B. beim
+ * Kopieren oder Auschecken ein geändertes Template beide behalten kann.
+ * Sonst wird die XML-Datei per StAX gelesen und die Binärfassung neu
+ * geschrieben.</p>
+ * <p>Format der Binärfassung:</p>
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * UTF     SHA-256 der XML-Datei
+ * int     Anzahl Attribute
+ * je Attribut: UTF Name, int Seite, float xStart, yStart, xEnd, yEnd
+ * int     Anzahl Ankertexte
+ * je Anker: UTF Text, int Seite, float xStart, yStart, xEnd, yEnd
+ * </pre>
+ *
+ * @author nba
+ */
+public class TemplateLoader {
+
+	/**
+	 * Dateiendung der kompilierten Fassung
+	 */
+	public static final String COMPILED_SUFFIX = ".compiled";
+
+	/**
+	 * Kennung am Dateianfang
+	 */
+	private static final int MAGIC = 0x50545031;
+
+	/**
+	 * Version des Binärformats
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * keine Instanzen
+	 */
+	private TemplateLoader() {
+	}
+
+	/**
+	 * Lädt ein Template, bevorzugt aus der kompilierten Fassung
+	 * @param xml
+	 * 			XML-Templatedatei
+	 * @return unveränderlicher Attributplan
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 * @throws XMLStreamException
+	 * 			Fehler beim Parsen der XML
+	 */
+	public static AttributePlan load(File xml) throws IOException, XMLStreamException {
+		File compiled = new File(xml.getPath() + COMPILED_SUFFIX);
+		String hash = Hashes.sha256(xml);
+		if (compiled.isFile()) {
+			AttributePlan plan = readCompiled(compiled, hash);
+			if (plan != null) {
+				return plan;
+			}
+		}
+
+		List<Attribute> anchors = new ArrayList<Attribute>();
+		AttributePlan plan = new AttributePlan(readXml(xml, anchors), anchors);
+		try {
+			writeCompiled(compiled, hash, plan);
+		} catch (IOException e) {
+			//z.B. schreibgeschütztes Verzeichnis, das Template ist trotzdem nutzbar
+			System.out.println("[WARN] " + compiled.getName() + " konnte nicht geschrieben werden: " + e.getMessage());
+		}
+		return plan;
+	}
+
+	/**
+	 * Liest die Attribute per StAX aus der XML-Datei
+	 * @param xml
+	 * 			XML-Templatedatei
+	 * @return Attribute in der Reihenfolge der Datei
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 * @throws XMLStreamException
+	 * 			Fehler beim Parsen der XML
+	 */
+	public static List<Attribute> readXml(File xml) throws IOException, XMLStreamException {
+		return readXml(xml, new ArrayList<Attribute>());
+	}
+
+	/**
+	 * Liest Attribute und Ankertexte per StAX aus der XML-Datei
+	 * @param xml
+	 * 			XML-Templatedatei
+	 * @param anchors
+	 * 			Ziel für die Ankertexte, s. {@link AttributePlan#getAnchors()}
+	 * @return Attribute in der Reihenfolge der Datei
+	 * @throws IOException
+	 * 			Fehler beim Lesen der Datei
+	 * @throws XMLStreamException
+	 * 			Fehler beim Parsen der XML
+	 */
+	public static List<Attribute> readXml(File xml, List<Attribute> anchors) throws IOException, XMLStreamException {
+		List<Attribute> ret = new ArrayList<Attribute>();
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(xml))) {
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				//vor Version 2 wurde y-end nicht vom oberen Seitenrand gemessen und ist unbrauchbar
+				boolean legacy = true;
+				//attribute oder anchor
+				String inElement = null;
+				String name = null;
+				int page = 0;
+				float xStart = 0, yStart = 0, xEnd = 0, yEnd = 0;
+
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						String element = reader.getLocalName();
+						if (element.equals("template")) {
+							String version = reader.getAttributeValue(null, "version");
+							legacy = version == null || version.isEmpty();
+						} else if (element.equals("attribute") || element.equals("anchor")) {
+							inElement = element;
+							name = null;
+							page = 0;
+							xStart = yStart = xEnd = yEnd = 0;
+						} else if (inElement != null) {
+							String value = reader.getElementText().trim();
+							try {
+								if (element.equals("name") || element.equals("text")) {
+									name = value;
+								} else if (element.equals("page")) {
+									page = Integer.parseInt(value);
+								} else if (element.equals("x-start")) {
+									xStart = Float.parseFloat(value);
+								} else if (element.equals("y-start")) {
+									yStart = Float.parseFloat(value);
+								} else if (element.equals("x-end")) {
+									xEnd = Float.parseFloat(value);
+								} else if (element.equals("y-end")) {
+									yEnd = Float.parseFloat(value);
+								}
+							} catch (NumberFormatException e) {
+								throw new IOException("Ungültiger Wert \"" + value + "\" für " + element + " in " + xml.getName(), e);
+							}
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(inElement)) {
+						if (name == null || name.isEmpty()) {
+							throw new IOException((inElement.equals("anchor") ? "Anker ohne Text" : "Attribut ohne Namen")
+									+ " in " + xml.getName());
+						}
+						Attribute attr = new Attribute(name, page, xStart, yStart, xEnd, legacy ? yStart : yEnd);
+						if (inElement.equals("anchor")) {
+							anchors.add(attr);
+						} else {
+							ret.add(attr);
+						}
+						inElement = null;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Liest die kompilierte Fassung
+	 * @param compiled
+	 * 			Binärdatei
+	 * @param hash
+	 * 			aktuelle Prüfsumme der XML-Datei
+	 * @return Template oder <code>null</code>, wenn die Binärdatei veraltet
+	 * 			oder ungültig ist
+	 */
+	private static AttributePlan readCompiled(File compiled, String hash) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(compiled)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			if (!in.readUTF().equals(hash)) {
+				return null;
+			}
+			List<Attribute> attributes = readAttributes(in);
+			return new AttributePlan(attributes, readAttributes(in));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * liest eine Liste von Attributen bzw. Ankertexten aus der Binärfassung
+	 */
+	private static List<Attribute> readAttributes(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Attribute> ret = new ArrayList<Attribute>(count);
+		for (int i = 0; i < count; i++) {
+			ret.add(new Attribute(in.readUTF(), in.readInt(), in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()));
+		}
+		return ret;
+	}
+
+	/**
+	 * schreibt eine Liste von Attributen bzw. Ankertexten in die Binärfassung
+	 */
+	private static void writeAttributes(DataOutputStream out, List<Attribute> attributes) throws IOException {
+		out.writeInt(attributes.size());
+		for (Attribute attr : attributes) {
+			out.writeUTF(attr.name);
+			out.writeInt(attr.page);
+			out.writeFloat(attr.xStart);
+			out.writeFloat(attr.yStart);
+			out.writeFloat(attr.xEnd);
+			out.writeFloat(attr.yEnd);
+		}
+	}
+
+	/**
+	 * Schreibt die kompilierte Fassung über eine temporäre Datei, s.
+	 * {@link AtomicFiles}
+	 * @param compiled
+	 * 			Binärdatei
+	 * @param hash
+	 * 			Prüfsumme der XML-Datei
+	 * @param plan
+	 * 			gelesenes Template
+	 * @throws IOException
+	 * 			Fehler beim Schreiben
+	 */
+	private static void writeCompiled(File compiled, final String hash, final AttributePlan plan) throws IOException {
+		AtomicFiles.write(compiled, new AtomicFiles.Content() {
+
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(hash);
+				writeAttributes(out, plan.getAttributes());
+				writeAttributes(out, plan.getAnchors());
+			}
+		});
+	}
+}
@@ -0,0 +1,276 @@
+package org.paperless.de.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.paperless.de.util.Attribute;
+
+/**
+ * Misst die Extraktion und den Abgleich auf echten PDF-Dokumenten. Die
+ * Dokumente werden beim Setup mit PDFBox erzeugt: jede Seite enthält
+ * <code>linesPerPage</code> Zeilen mit je <code>columns</code> Spalten, die
+ * durch große Abstände getrennt sind und daher von
+ * {@link TextStripper#nextSplit} getrennt werden. Jede fünfte Spalte ist
+ * dokumentspezifisch, der Rest ist in beiden Dokumenten gleich.
+ *
+ * @author nba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+
+	/**
+	 * Toleranz in X- und Y-Richtung
+	 */
+	private static final float TOL = 3f;
+
+	/**
+	 * Anzahl Seiten je Dokument
+	 */
+	@Param({"1", "10"})
+	public int pages;
+
+	/**
+	 * Anzahl Zeilen je Seite
+	 */
+	@Param({"20", "80"})
+	public int linesPerPage;
+
+	/**
+	 * Anzahl Spalten je Zeile
+	 */
+	@Param({"2", "6"})
+	public int columns;
+
+	/**
+	 * Anzahl Attribute im Template
+	 */
+	@Param({"20"})
+	public int attributes;
+
+	/**
+	 * geladenes Dokument für die Parse-Benchmarks
+	 */
+	private PDDocument docA;
+
+	/**
+	 * geparste Dokumente für {@link #compare()} und die Attributsuche
+	 */
+	private TextStripper stripperA, stripperB;
+
+	/**
+	 * Texte von {@link #stripperA} für {@link #attrValuesFreshIndex()}
+	 */
+	private List<PdfString> textsA;
+
+	/**
+	 * Template mit zufällig gewählten Texten aus {@link #stripperA}, leicht
+	 * verschoben
+	 */
+	private List<Attribute> attrList;
+
+	/**
+	 * Texte und Glyphlisten aus {@link PDFTextStripper#writeString} für die
+	 * Benchmarks von {@link TextStripper#nextSplit} und {@link PdfString}
+	 */
+	private List<String> strings;
+
+	/**
+	 * Glyphlisten zu {@link #strings}
+	 */
+	private List<List<TextPosition>> positions;
+
+	/**
+	 * Seitennummern zu {@link #strings}
+	 */
+	private List<Integer> pageNums;
+
+	/**
+	 * Erzeugt und parst die beiden Dokumente und wählt die Attribute
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		docA = PDDocument.load(createPdf("a"));
+		try (PDDocument docB = PDDocument.load(createPdf("b"))) {
+			stripperB = new TextStripper();
+			stripperB.parse(docB);
+		}
+		stripperA = new TextStripper();
+		stripperA.parse(docA);
+		textsA = stripperA.getTexts();
+
+		//Glyphlisten so abgreifen, wie sie der TextStripper erhält
+		strings = new ArrayList<String>();
+		positions = new ArrayList<List<TextPosition>>();
+		pageNums = new ArrayList<Integer>();
+		PDFTextStripper recorder = new PDFTextStripper() {
+			@Override
+			protected void writeString(String text, List<TextPosition> textPositions) {
+				strings.add(text);
+				positions.add(new ArrayList<TextPosition>(textPositions));
+				pageNums.add(getCurrentPageNo());
+			}
+		};
+		recorder.getText(docA);
+
+		Random random = new Random(2);
+		List<PdfString> texts = stripperA.getTexts();
+		attrList = new ArrayList<Attribute>();
+		for (int i = 0; i < attributes; i++) {
+			PdfString text = texts.get(random.nextInt(texts.size()));
+			attrList.add(new Attribute("attr" + i, text.getPageNum(),
+					text.getFirstX() + random.nextFloat() * 2 - 1, text.getFirstY() + random.nextFloat() * 2 - 1,
+					text.getLastX(), text.getLastY()));
+		}
+	}
+
+	/**
+	 * Schließt das geladene Dokument
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		docA.close();
+	}
+
+	/**
+	 * Erzeugt ein Dokument mit der gewählten Seitenzahl und Textdichte
+	 * @param variant
+	 * 			Inhalt der dokumentspezifischen Spalten
+	 */
+	private byte[] createPdf(String variant) throws IOException {
+		float columnWidth = 500f / columns;
+		float lineHeight = 700f / linesPerPage;
+		float fontSize = Math.min(10f, lineHeight * 0.8f);
+		try (PDDocument doc = new PDDocument()) {
+			for (int p = 1; p <= pages; p++) {
+				PDPage page = new PDPage();
+				doc.addPage(page);
+				try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+					cs.setFont(PDType1Font.HELVETICA, fontSize);
+					for (int l = 0; l < linesPerPage; l++) {
+						for (int c = 0; c < columns; c++) {
+							int cell = l * columns + c;
+							cs.beginText();
+							cs.newLineAtOffset(50 + c * columnWidth, 750 - l * lineHeight);
+							cs.showText(cell % 5 == 0 ? "Wert " + variant + p + "-" + cell : "Feld " + cell);
+							cs.endText();
+						}
+					}
+				}
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			doc.save(out);
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Parsen eines geladenen Dokuments mit Layoutanalyse von PDFBox
+	 */
+	@Benchmark
+	public List<PdfString> parse() throws IOException {
+		TextStripper stripper = new TextStripper();
+		stripper.parse(docA);
+		return stripper.getTexts();
+	}
+
+	/**
+	 * Parsen ohne Layoutanalyse, s. {@link TextStripper#setRawGlyphs}
+	 */
+	@Benchmark
+	public List<PdfString> parseRaw() throws IOException {
+		TextStripper stripper = new TextStripper();
+		stripper.setRawGlyphs(true);
+		stripper.parse(docA);
+		return stripper.getTexts();
+	}
+
+	/**
+	 * Aufteilen aller Glyphlisten des Dokuments an großen Abständen
+	 */
+	@Benchmark
+	public void splitText(Blackhole bh) {
+		for (List<TextPosition> pos : positions) {
+			for (int start = 0; start < pos.size(); start = TextStripper.nextSplit(pos, start)) {
+				bh.consume(start);
+			}
+		}
+	}
+
+	/**
+	 * Erzeugen der {@link PdfString}s mit dem Text von PDFBox
+	 */
+	@Benchmark
+	public void pdfStringWithText(Blackhole bh) {
+		for (int i = 0; i < positions.size(); i++) {
+			bh.consume(new PdfString(strings.get(i), positions.get(i), pageNums.get(i)));
+		}
+	}
+
+	/**
+	 * Erzeugen der {@link PdfString}s mit Text aus den Glyphen
+	 */
+	@Benchmark
+	public void pdfStringFromGlyphs(Blackhole bh) {
+		for (int i = 0; i < positions.size(); i++) {
+			bh.consume(new PdfString(positions.get(i), pageNums.get(i)));
+		}
+	}
+
+	/**
+	 * Vergleich zweier Dokumente wie bei der Templateerstellung
+	 */
+	@Benchmark
+	public List<PdfString> compare() {
+		return stripperA.compare(stripperB, TOL, TOL);
+	}
+
+	/**
+	 * Attributsuche mit bereits aufgebautem Index: {@link #stripperA} behält
+	 * seinen {@link TextIndex} nach dem ersten Aufruf, gemessen werden also
+	 * nur die Suchen
+	 */
+	@Benchmark
+	public Map<String, String> attrValues() {
+		return stripperA.getAttrValues(attrList, TOL, TOL);
+	}
+
+	/**
+	 * Attributsuche mit neuem {@link TextStripper} je Aufruf, inkl. Aufbau
+	 * des {@link TextIndex}. Entspricht der Verarbeitung, in der jedes
+	 * Dokument einmal abgeglichen wird.
+	 */
+	@Benchmark
+	public Map<String, String> attrValuesFreshIndex() throws IOException {
+		return new TextStripper(textsA).getAttrValues(attrList, TOL, TOL);
+	}
+}
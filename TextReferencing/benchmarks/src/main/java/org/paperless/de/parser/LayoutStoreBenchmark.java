@@ -0,0 +1,127 @@
+package org.paperless.de.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.paperless.de.util.Attribute;
+
+/**
+ * Vergleicht den Abgleich über {@link LayoutStore} mit dem über die
+ * Objektliste in {@link TextStripper}. Die Layouts werden synthetisch
+ * erzeugt, damit nur der Abgleich gemessen wird.
+ *
+ * @author nba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutStoreBenchmark {
+
+	/**
+	 * Toleranz in X- und Y-Richtung
+	 */
+	private static final float TOL = 3f;
+
+	/**
+	 * Anzahl Texte pro Seite
+	 */
+	@Param({"100", "1000", "4000"})
+	public int textsPerPage;
+
+	/**
+	 * Anzahl Seiten
+	 */
+	@Param({"4"})
+	public int pages;
+
+	/**
+	 * Anzahl Attribute im Template
+	 */
+	@Param({"50"})
+	public int attributes;
+
+	private TextStripper stripperA, stripperB;
+
+	private LayoutStore storeA, storeB;
+
+	private List<Attribute> attrList;
+
+	@Setup
+	public void setup() throws IOException {
+		List<PdfString> textsA = createTexts(new Random(1), "a");
+		List<PdfString> textsB = createTexts(new Random(1), "b");
+		stripperA = new TextStripper(textsA);
+		stripperB = new TextStripper(textsB);
+		storeA = new LayoutStore(textsA);
+		storeB = new LayoutStore(textsB);
+
+		Random random = new Random(2);
+		attrList = new ArrayList<Attribute>();
+		for (int i = 0; i < attributes; i++) {
+			PdfString text = textsA.get(random.nextInt(textsA.size()));
+			attrList.add(new Attribute("attr" + i, text.getPageNum(),
+					text.getFirstX() + random.nextFloat() * 2 - 1, text.getFirstY() + random.nextFloat() * 2 - 1,
+					text.getLastX(), text.getLastY()));
+		}
+
+		//Warmlaufen des Index, damit nur die Suche gemessen wird
+		stripperA.getAttrValues(attrList, TOL, TOL);
+	}
+
+	/**
+	 * Erzeugt Texte in Zeilen mit mehreren Spalten. Jeder zehnte Text
+	 * erhält einen dokumentspezifischen Inhalt.
+	 */
+	private List<PdfString> createTexts(Random random, String variant) {
+		List<PdfString> ret = new ArrayList<PdfString>();
+		int columns = 5;
+		float lineHeight = 700f * columns / textsPerPage;
+		for (int page = 1; page <= pages; page++) {
+			for (int i = 0; i < textsPerPage; i++) {
+				float x = 40 + (i % columns) * 100 + random.nextFloat();
+				float y = 40 + (i / columns) * lineHeight + random.nextFloat();
+				String text = (i % 10 == 0) ? "Wert " + variant + i : "Text " + i;
+				ret.add(new PdfString(text, page, x, y, x + 80, y));
+			}
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public Map<String, String> attrValuesObjects() {
+		return stripperA.getAttrValues(attrList, TOL, TOL);
+	}
+
+	@Benchmark
+	public Map<String, String> attrValuesStore() {
+		return storeA.getAttrValues(attrList, TOL, TOL);
+	}
+
+	@Benchmark
+	public List<PdfString> compareObjects() {
+		return stripperA.compare(stripperB, TOL, TOL);
+	}
+
+	@Benchmark
+	public List<PdfString> compareStore() {
+		return storeA.compare(storeB, TOL, TOL);
+	}
+}